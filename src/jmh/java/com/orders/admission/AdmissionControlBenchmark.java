@@ -0,0 +1,99 @@
+package com.orders.admission;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// one admission decision under contention, on every core (-t 1 for the uncontended cost): all threads on one
+// sub's bucket (a single client flooding) and threads spread over many subs (normal traffic), with a limit that
+// admits everything (every decision is a CAS) and one that rejects nearly everything (the fast-reject path, a
+// read). lockedBuckets is the usual alternative, a refill-on-read token bucket per sub behind one lock
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class AdmissionControlBenchmark {
+
+    @Param({"1000000000/1s", "100/1m"})
+    private String limit;
+
+    @Param({"1", "10000"})
+    private int subs;
+
+    private AdmissionControl.Limiter limiter;
+    private LockedBuckets lockedBuckets;
+    private String[] subjects;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private int next = ThreadLocalRandom.current().nextInt();
+    }
+
+    @Setup
+    public void setUp() {
+        AdmissionControl admissionControl = new AdmissionControl(true, 16, Duration.ofMinutes(10), Duration.ofMinutes(1), System::nanoTime);
+        this.limiter = (AdmissionControl.Limiter) admissionControl.limit("benchmark", this.limit);
+        AdmissionControl.RateLimit rateLimit = AdmissionControl.RateLimit.parse(this.limit);
+        this.lockedBuckets = new LockedBuckets(rateLimit.permits(), (double) rateLimit.permits() / rateLimit.period().toNanos());
+        this.subjects = new String[this.subs];
+        for (int i = 0; i < this.subs; i++) {
+            this.subjects[i] = "auth0|" + Integer.toHexString(ThreadLocalRandom.current().nextInt()) + i;
+        }
+    }
+
+    @Benchmark
+    public long stripedBuckets(Caller caller) {
+        return this.limiter.tryAcquire(this.subject(caller), System.nanoTime());
+    }
+
+    @Benchmark
+    public boolean lockedBuckets(Caller caller) {
+        return this.lockedBuckets.tryAcquire(this.subject(caller), System.nanoTime());
+    }
+
+    private String subject(Caller caller) {
+        return this.subjects[(caller.next++ & Integer.MAX_VALUE) % this.subjects.length];
+    }
+
+    private static final class LockedBuckets {
+
+        private final Map<String, double[]> buckets = new HashMap<>();
+        private final long capacity;
+        private final double permitsPerNano;
+
+        LockedBuckets(long capacity, double permitsPerNano) {
+            this.capacity = capacity;
+            this.permitsPerNano = permitsPerNano;
+        }
+
+        // tokens and the time of the last refill
+        synchronized boolean tryAcquire(String subject, long now) {
+            double[] bucket = this.buckets.computeIfAbsent(subject, key -> new double[]{this.capacity, now});
+            bucket[0] = Math.min(this.capacity, bucket[0] + (now - bucket[1]) * this.permitsPerNano);
+            bucket[1] = now;
+            if (bucket[0] < 1) {
+                return false;
+            }
+            bucket[0]--;
+            return true;
+        }
+    }
+}
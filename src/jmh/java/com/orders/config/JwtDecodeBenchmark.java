@@ -0,0 +1,81 @@
+package com.orders.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// per-request cost of resolving the auth0 id: before, the handler re-verified the RS256 signature on
+// every request; after, it reads the principal the security filter already built, and the filter
+// itself verifies a given token once thanks to CachingReactiveJwtDecoder
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtDecodeBenchmark {
+
+    private String token;
+    private ReactiveJwtDecoder verifyingDecoder;
+    private ReactiveJwtDecoder cachingDecoder;
+    private JwtAuthenticationToken principal;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException, JOSEException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject("auth0|benchmark")
+                .issueTime(new Date())
+                .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.RS256), claims);
+        jwt.sign(new RSASSASigner(keyPair.getPrivate()));
+        this.token = jwt.serialize();
+        this.verifyingDecoder = NimbusReactiveJwtDecoder.withPublicKey((RSAPublicKey) keyPair.getPublic()).build();
+        this.cachingDecoder = new CachingReactiveJwtDecoder(this.verifyingDecoder, 10_000, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        this.principal = new JwtAuthenticationToken(this.verifyingDecoder.decode(this.token).block());
+    }
+
+    @Benchmark
+    public String decodeEveryRequest() {
+        return this.verifyingDecoder.decode(this.token).map(Jwt::getSubject).block();
+    }
+
+    @Benchmark
+    public String cachedDecode() {
+        return this.cachingDecoder.decode(this.token).map(Jwt::getSubject).block();
+    }
+
+    @Benchmark
+    public String securityContextPrincipal() {
+        return this.principal.getToken().getSubject();
+    }
+}
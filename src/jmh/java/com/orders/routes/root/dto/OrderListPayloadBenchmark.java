@@ -0,0 +1,81 @@
+package com.orders.routes.root.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orders.model.CartItem;
+import com.orders.model.DeliveryDetails;
+import com.orders.model.Order;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// a 50-order list page, full view vs view=summary: response bytes per page (printed at setup) and the
+// distribution of building + serializing it (SampleTime reports p0.99)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderListPayloadBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PageRequest pageRequest = PageRequest.of(0, PAGE_SIZE);
+    private List<Order> orders;
+    private List<OrderSummary> summaries;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        this.orders = new ArrayList<>(PAGE_SIZE);
+        this.summaries = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            Order order = new Order();
+            order.setId(new ObjectId());
+            order.setUserId("google-oauth2|10476323467281190" + i);
+            order.setRestaurantId("65f1c2a9e4b0a1b2c3d4e5f6");
+            order.setStatus(Order.Status.PAID);
+            order.setDeliveryPrice(499L);
+            order.setTotalAmount(4397L);
+            order.setCreatedAt(LocalDateTime.of(2024, 3, 1, 12, 0).plusMinutes(i));
+            order.setDeliveryDetails(new DeliveryDetails("customer" + i + "@example.com", "Customer Name " + i, i + " Long Street Name", "Springfield"));
+            List<CartItem> cartItems = new ArrayList<>();
+            for (int j = 0; j < 4; j++) {
+                cartItems.add(new CartItem(new ObjectId().toString(), j + 1, "Menu item with a descriptive name " + j));
+            }
+            order.setCartItems(cartItems);
+            this.orders.add(order);
+            // what the SUMMARY_FIELDS projection returns for the same document
+            this.summaries.add(new OrderSummary(order.getId().toString(), order.getStatus(), order.getCreatedAt(),
+                    order.getTotalAmount(), cartItems.size()));
+        }
+        System.out.printf("%n50-order page payload: full %d bytes, summary %d bytes%n", this.fullPage().length, this.summaryPage().length);
+    }
+
+    @Benchmark
+    public byte[] fullPage() throws JsonProcessingException {
+        OrdersGETReq<OrderDto> page = OrdersGETReq.fromOrders(this.orders, this.pageRequest, 500L);
+        return this.objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] summaryPage() throws JsonProcessingException {
+        OrdersGETReq<OrderSummary> page = OrdersGETReq.fromSummaries(this.summaries, this.pageRequest, 500L);
+        return this.objectMapper.writeValueAsBytes(page);
+    }
+}
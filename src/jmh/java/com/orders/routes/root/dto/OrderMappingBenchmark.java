@@ -0,0 +1,111 @@
+package com.orders.routes.root.dto;
+
+import com.orders.model.CartItem;
+import com.orders.model.DeliveryDetails;
+import com.orders.model.Order;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// mapping a 50-order page to OrdersGETReq<OrderDto>: the previous Flux-per-page + Flux-per-order chain against
+// the synchronous conversion, plus a single OrderDto.fromOrder; -prof gc reports gc.alloc.rate.norm (bytes per op)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderMappingBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    private final PageRequest pageRequest = PageRequest.of(0, PAGE_SIZE);
+    private List<Order> orders;
+
+    @Setup
+    public void setUp() {
+        this.orders = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            Order order = new Order();
+            order.setId(new ObjectId());
+            order.setUserId("google-oauth2|10476323467281190" + i);
+            order.setRestaurantId("65f1c2a9e4b0a1b2c3d4e5f6");
+            order.setStatus(Order.Status.PAID);
+            order.setDeliveryPrice(499L);
+            order.setTotalAmount(4397L);
+            order.setCreatedAt(LocalDateTime.of(2024, 3, 1, 12, 0).plusMinutes(i));
+            order.setDeliveryDetails(new DeliveryDetails("customer" + i + "@example.com", "Customer Name " + i, i + " Long Street Name", "Springfield"));
+            List<CartItem> cartItems = new ArrayList<>();
+            for (int j = 0; j < 4; j++) {
+                cartItems.add(new CartItem(new ObjectId().toString(), j + 1, "Menu item with a descriptive name " + j));
+            }
+            order.setCartItems(cartItems);
+            this.orders.add(order);
+        }
+    }
+
+    @Benchmark
+    public OrdersGETReq<OrderDto> reactive() {
+        OrdersGETReq<OrderDto> dto = new OrdersGETReq<>();
+        dto.setPagination(new Pagination(this.pageRequest, 500L));
+        return Flux.fromIterable(this.orders)
+                .flatMap(OrderMappingBenchmark::reactiveOrderDto)
+                .collectList()
+                .map(rows -> {
+                    dto.setRows(rows);
+                    return dto;
+                })
+                .block();
+    }
+
+    @Benchmark
+    public OrderDto singleOrder() {
+        return OrderDto.fromOrder(this.orders.get(0));
+    }
+
+    @Benchmark
+    public OrdersGETReq<OrderDto> synchronous() {
+        return OrdersGETReq.fromOrders(this.orders, this.pageRequest, 500L);
+    }
+
+    // OrderDto.fromOrder as it was before it became synchronous
+    private static Mono<OrderDto> reactiveOrderDto(Order order) {
+        OrderDto dto = new OrderDto();
+        dto.setId(order.getId().toString());
+        dto.setUserId(order.getUserId());
+        dto.setRestaurantId(order.getRestaurantId());
+        dto.setDeliveryDetails(order.getDeliveryDetails());
+        dto.setCartItems(order.getCartItems());
+        dto.setDeliveryPrice(order.getDeliveryPrice());
+        dto.setTotalAmount(order.getTotalAmount());
+        dto.setStatus(order.getStatus());
+        dto.setCreatedAt(order.getCreatedAt());
+        return Flux.fromIterable(order.getCartItems())
+                .map(cartItem -> new CartItem(
+                        cartItem.getId(),
+                        cartItem.getQuantity(),
+                        cartItem.getName()
+                ))
+                .collectList()
+                .map(cartItems -> {
+                    dto.setCartItems(cartItems);
+                    return dto;
+                });
+    }
+}
@@ -0,0 +1,56 @@
+package com.orders.routes.root.dto;
+
+import com.orders.model.Order;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// the pagination block of a list response: offset mode with a server-side count, and cursor mode,
+// which encodes the next cursor from the last row of the page
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaginationBenchmark {
+
+    private final PageRequest pageRequest = PageRequest.of(3, 50);
+    private Order lastRow;
+    private String cursor;
+
+    @Setup
+    public void setUp() {
+        this.lastRow = new Order();
+        this.lastRow.setId(new ObjectId());
+        this.lastRow.setCreatedAt(LocalDateTime.of(2024, 3, 1, 12, 0));
+        this.cursor = PageCursor.fromOrder(this.lastRow).encode();
+    }
+
+    @Benchmark
+    public Pagination offset() {
+        return new Pagination(this.pageRequest, 1234L);
+    }
+
+    @Benchmark
+    public Pagination cursor() {
+        return new Pagination(50, PageCursor.fromOrder(this.lastRow).encode());
+    }
+
+    @Benchmark
+    public PageCursor decodeCursor() {
+        return PageCursor.decode(this.cursor);
+    }
+}
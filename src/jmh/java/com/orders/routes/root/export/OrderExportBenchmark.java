@@ -0,0 +1,119 @@
+package com.orders.routes.root.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orders.model.CartItem;
+import com.orders.model.DeliveryDetails;
+import com.orders.model.Order;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// exports a 1M-order restaurant history through the streaming pipeline, generating orders lazily the way
+// the Mongo cursor hands them out, and reports the largest heap left live after any GC during the run.
+// The heap is capped at 256m: the streamed export stays flat, whereas collecting the history first
+// (what paging with a huge size amounted to) needs the whole history on the heap at once.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class OrderExportBenchmark {
+
+    @Param({"1000000"})
+    public int orders;
+
+    private OrderExporter exporter;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounters {
+
+        public long maxLiveHeapMb;
+
+        public long bytesWritten;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            System.gc();
+            this.maxLiveHeapMb = 0;
+            this.bytesWritten = 0;
+        }
+
+        void sample() {
+            long used = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage afterGc = pool.getCollectionUsage();
+                if (pool.getType() == MemoryType.HEAP && afterGc != null) {
+                    used += afterGc.getUsed();
+                }
+            }
+            this.maxLiveHeapMb = Math.max(this.maxLiveHeapMb, used / (1024 * 1024));
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        this.exporter = new OrderExporter(new ObjectMapper());
+    }
+
+    @Benchmark
+    public long ndjson(HeapCounters counters) {
+        return this.export(this.exporter.ndjson(this.history()), counters);
+    }
+
+    @Benchmark
+    public long csv(HeapCounters counters) {
+        return this.export(this.exporter.csv(this.history()), counters);
+    }
+
+    private long export(Flux<String> chunks, HeapCounters counters) {
+        return chunks
+                .index()
+                .doOnNext(chunk -> {
+                    counters.bytesWritten += chunk.getT2().length();
+                    if (chunk.getT1() % 100 == 0) {
+                        counters.sample();
+                    }
+                })
+                .count()
+                .block();
+    }
+
+    private Flux<Order> history() {
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+        return Flux.range(0, this.orders).map(i -> {
+            Order order = new Order();
+            order.setId(new ObjectId());
+            order.setUserId("auth0|user" + (i % 5000));
+            order.setRestaurantId("restaurant");
+            order.setStatus(Order.Status.DELIVERED);
+            order.setDeliveryPrice(500L);
+            order.setTotalAmount(2500L);
+            order.setCreatedAt(start.plusMinutes(i));
+            order.setDeliveryDetails(new DeliveryDetails("customer@example.com", "Customer", "1 Main St", "Springfield"));
+            order.setCartItems(List.of(new CartItem("pizza", 2, "Pizza"), new CartItem("soda", 1, "Soda")));
+            return order;
+        });
+    }
+}
@@ -0,0 +1,134 @@
+package com.orders.routes.stripe.handlers;
+
+import com.orders.model.CartItem;
+import com.orders.routes.stripe.dto.MenuItem;
+import com.orders.routes.stripe.dto.Restaurant;
+import com.orders.routes.stripe.dto.RestaurantMenu;
+import com.stripe.param.checkout.SessionCreateParams.LineItem;
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData;
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData.ProductData;
+import com.stripe.param.checkout.SessionCreateParams.ShippingOption;
+import com.stripe.param.checkout.SessionCreateParams.ShippingOption.ShippingRateData;
+import com.stripe.param.checkout.SessionCreateParams.ShippingOption.ShippingRateData.FixedAmount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// the Stripe params of a checkout (line items + shipping option) for a cart, across menu and cart sizes:
+// rebuilt from the menu on every checkout as before, against the templates precompiled per cached menu;
+// -prof gc reports gc.alloc.rate.norm (bytes per checkout)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckoutLineItemsBenchmark {
+
+    @Param({"20", "2000"})
+    private int menuSize;
+
+    @Param({"3", "30"})
+    private int cartSize;
+
+    private final StripeRoutesHandler handler = new StripeRoutesHandler();
+    private RestaurantMenu restaurantMenu;
+    private Map<String, MenuItem> menuItems;
+    private List<CartItem> cartItems;
+
+    @Setup
+    public void setUp() {
+        List<MenuItem> menuItems = new ArrayList<>(this.menuSize);
+        for (int i = 0; i < this.menuSize; i++) {
+            menuItems.add(new MenuItem("menu-item-" + i, "Menu item with a descriptive name " + i, 1000L + i));
+        }
+        Restaurant restaurant = new Restaurant();
+        restaurant.setId("65f1c2a9e4b0a1b2c3d4e5f6");
+        restaurant.setDeliveryPrice(499L);
+        restaurant.setMenuItems(menuItems);
+        this.restaurantMenu = new RestaurantMenu(restaurant);
+        this.menuItems = menuItems.stream().collect(Collectors.toUnmodifiableMap(MenuItem::getId, Function.identity()));
+        this.cartItems = new ArrayList<>(this.cartSize);
+        for (int i = 0; i < this.cartSize; i++) {
+            // spread the cart over the whole menu
+            MenuItem menuItem = menuItems.get(i * this.menuSize / this.cartSize);
+            this.cartItems.add(new CartItem(menuItem.getId(), i % 3 + 1, menuItem.getName()));
+        }
+    }
+
+    @Benchmark
+    public void rebuilt(Blackhole blackhole) {
+        blackhole.consume(Flux.fromIterable(this.cartItems)
+                .flatMap(cartItem -> {
+                    MenuItem menuItem = this.menuItems.get(cartItem.getId());
+                    if (menuItem == null) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Restaurant not found"));
+                    }
+                    return Mono.just(lineItem(menuItem, cartItem.getQuantity()));
+                })
+                .collectList()
+                .block());
+        blackhole.consume(shippingOption(499L));
+    }
+
+    @Benchmark
+    public void precompiled(Blackhole blackhole) {
+        blackhole.consume(this.handler.createLineItems(this.restaurantMenu, this.cartItems));
+        blackhole.consume(this.restaurantMenu.getShippingOption());
+    }
+
+    // StripeRoutesHandler.createLineItem as it was before the menu carried precompiled prices
+    private static LineItem lineItem(MenuItem menuItem, Integer quantity) {
+        ProductData productData = ProductData
+                .builder()
+                .setName(menuItem.getName())
+                .build();
+        PriceData priceData = PriceData
+                .builder()
+                .setCurrency("usd")
+                .setUnitAmount(menuItem.getPrice())
+                .setProductData(productData)
+                .build();
+        return LineItem
+                .builder()
+                .setPriceData(priceData)
+                .setQuantity((long) quantity)
+                .build();
+    }
+
+    // and the shipping option createSession used to build for every session
+    private static ShippingOption shippingOption(Long deliveryPrice) {
+        FixedAmount fixedAmount = FixedAmount.builder()
+                .setAmount(deliveryPrice)
+                .setCurrency("usd")
+                .build();
+        ShippingRateData shippingRateData = ShippingRateData.builder()
+                .setDisplayName("Delivery")
+                .setType(ShippingRateData.Type.FIXED_AMOUNT)
+                .setFixedAmount(fixedAmount)
+                .build();
+        return ShippingOption.builder()
+                .setShippingRateData(shippingRateData)
+                .build();
+    }
+}
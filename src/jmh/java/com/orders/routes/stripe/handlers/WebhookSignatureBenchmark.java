@@ -0,0 +1,59 @@
+package com.orders.routes.stripe.handlers;
+
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.Webhook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+// what the webhook does before recording an event: checking the stripe-signature HMAC and parsing the
+// payload (constructEvent), next to the signature check alone
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebhookSignatureBenchmark {
+
+    private static final String SECRET = "whsec_benchmark";
+    private static final long TOLERANCE_SECONDS = 300;
+
+    private String payload;
+    private String signature;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException, InvalidKeyException {
+        this.payload = "{\"id\":\"evt_1OqXyZ2eZvKYlo2C0abcdefg\",\"object\":\"event\",\"api_version\":\"2023-10-16\","
+                + "\"created\":1709294400,\"type\":\"checkout.session.completed\",\"livemode\":false,"
+                + "\"data\":{\"object\":{\"id\":\"cs_test_a1b2c3d4e5f6\",\"object\":\"checkout.session\","
+                + "\"amount_total\":4397,\"currency\":\"usd\",\"payment_status\":\"paid\",\"status\":\"complete\","
+                + "\"metadata\":{\"orderId\":\"65f1c2a9e4b0a1b2c3d4e5f7\",\"restaurantId\":\"65f1c2a9e4b0a1b2c3d4e5f6\"}}}}";
+        // signed now so the whole run stays inside the default 300 second tolerance
+        long timestamp = Webhook.Util.getTimeNow();
+        String v1 = Webhook.Util.computeHmacSha256(SECRET, timestamp + "." + this.payload);
+        this.signature = "t=" + timestamp + ",v1=" + v1;
+    }
+
+    @Benchmark
+    public Event constructEvent() throws SignatureVerificationException {
+        return Webhook.constructEvent(this.payload, this.signature, SECRET);
+    }
+
+    @Benchmark
+    public boolean verifySignature() throws SignatureVerificationException {
+        return Webhook.Signature.verifyHeader(this.payload, this.signature, SECRET, TOLERANCE_SECONDS);
+    }
+}
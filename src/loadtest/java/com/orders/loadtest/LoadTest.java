@@ -0,0 +1,481 @@
+package com.orders.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.orders.model.CartItem;
+import com.orders.model.DeliveryDetails;
+import com.orders.model.Order;
+import io.netty.handler.codec.http.HttpMethod;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// boots the app as a child JVM against a local Mongo and in-process stand-ins for Auth0, the restaurant
+// service and Stripe, then drives a mix of checkouts, webhooks, list and status PATCH requests at a fixed
+// arrival rate and reports throughput and latency percentiles per route. Each restaurant is seeded with
+// delivered orders first, so list pages are full pages read from Mongo. Configured with -Dloadtest.* (see
+// the loadtest profile in pom.xml); nothing leaves 127.0.0.1 apart from the connection to Mongo
+public class LoadTest {
+
+    enum Route {
+        CHECKOUT("checkout", "POST /api/orders/create-checkout-session"),
+        WEBHOOK("webhook", "POST /api/orders/stripe-checkout-webhook"),
+        LIST("list", "GET /api/orders/get-restaurant-orders"),
+        LIST_SUMMARY("list-summary", "GET /api/orders/get-restaurant-orders?view=summary"),
+        PATCH("patch", "PATCH /api/orders/{id}/status");
+
+        private final String key;
+        private final String description;
+
+        Route(String key, String description) {
+            this.key = key;
+            this.description = description;
+        }
+    }
+
+    // an order the webhook workload has paid, and the status the patch workload moves it to next once ready
+    private record PaidOrder(String orderId, int restaurant, Order.Status next, long readyAt) {
+    }
+
+    private static final Duration TICK = Duration.ofMillis(10);
+    private static final String ENDPOINT_SECRET = "whsec_loadtest";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final double rps;
+    private final Duration warmup;
+    private final Duration duration;
+    private final int users;
+    private final int restaurants;
+    private final int listSize;
+    private final int maxInFlight;
+    private final Duration requestTimeout;
+    private final Duration webhookSettle;
+    private final Map<Route, Integer> mix;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<PaidOrder> paidOrders = new ConcurrentLinkedQueue<>();
+    private final WebhookSigner webhookSigner = new WebhookSigner(ENDPOINT_SECRET);
+    private StubAuthServer auth;
+    private StubRestaurantService restaurantService;
+    private StubStripe stripe;
+    private HttpClient client;
+    private String[] customerTokens;
+    private String[] ownerTokens;
+
+    LoadTest() {
+        this.rps = Double.parseDouble(property("rps", "200"));
+        this.warmup = Duration.parse("PT" + property("warmup", "10s"));
+        this.duration = Duration.parse("PT" + property("duration", "60s"));
+        this.users = Integer.parseInt(property("users", "1000"));
+        this.restaurants = Integer.parseInt(property("restaurants", "50"));
+        this.listSize = Integer.parseInt(property("list-size", "50"));
+        this.maxInFlight = Integer.parseInt(property("max-in-flight", "1000"));
+        this.requestTimeout = Duration.parse("PT" + property("request-timeout", "30s"));
+        // the app applies webhooks in the background; PATCHing a paid order sooner than this mostly conflicts
+        this.webhookSettle = Duration.parse("PT" + property("webhook-settle", "2s"));
+        this.mix = mix(property("mix", "checkout=1,webhook=1,list=3,list-summary=3,patch=2"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTest().run();
+    }
+
+    void run() throws Exception {
+        String mongoUri = property("mongo-uri", "mongodb://127.0.0.1:27017");
+        String database = "orders_loadtest_" + System.currentTimeMillis();
+        Duration stubLatency = Duration.parse("PT" + property("stub-latency", "0s"));
+        Duration stripeLatency = Duration.parse("PT" + property("stripe-latency", "0s"));
+        Path result = Path.of(property("result", "target/loadtest-result.json"));
+
+        this.auth = new StubAuthServer();
+        this.restaurantService = new StubRestaurantService(this.restaurants, stubLatency, this.objectMapper);
+        this.stripe = new StubStripe(stripeLatency);
+        int port = freePort();
+        int managementPort = freePort();
+        Process app = this.startApp(port, managementPort, mongoUri, database);
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(this.maxInFlight)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        boolean started = false;
+        try {
+            this.client = HttpClient.create(connections).baseUrl("http://127.0.0.1:" + port);
+            awaitHealthy(HttpClient.create().baseUrl("http://127.0.0.1:" + managementPort), app, Duration.parse("PT" + property("startup-timeout", "120s")));
+            started = true;
+            this.seed(mongoUri, database, Integer.parseInt(property("seed-orders", "200")));
+            this.mintTokens();
+
+            Map<Route, RouteStats> measured = this.drive();
+            double seconds = this.duration.toNanos() / 1e9;
+            Map<String, Object> report = this.report(measured, seconds);
+            print(measured, seconds);
+            result.toFile().getParentFile().mkdirs();
+            this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(result.toFile(), report);
+            System.out.println("Results written to " + result);
+        } finally {
+            app.destroy();
+            app.waitFor(30, TimeUnit.SECONDS);
+            connections.disposeLater().block();
+            this.stripe.close();
+            this.restaurantService.close();
+            this.auth.close();
+            // the app only creates the database once it has reached Mongo
+            if (started && !Boolean.parseBoolean(property("keep-database", "false"))) {
+                dropDatabase(mongoUri, database);
+            }
+        }
+    }
+
+    private Process startApp(int port, int managementPort, String mongoUri, String database) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        for (String arg : property("app-jvm-args", "").split("\\s+")) {
+            if (!arg.isEmpty()) {
+                command.add(arg);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("com.orders.Main");
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(property("app-log", "target/loadtest-app.log")));
+        environment(builder.environment(), port, managementPort, mongoUri, database, this.auth, this.restaurantService, this.stripe);
+        return builder.start();
+    }
+
+    // what the app reads from its environment, pointed at the stand-ins
+    static void environment(Map<String, String> env, int port, int managementPort, String mongoUri, String database,
+                            StubAuthServer auth, StubRestaurantService restaurantService, StubStripe stripe) {
+        env.put("PORT", String.valueOf(port));
+        env.put("MANAGEMENT_PORT", String.valueOf(managementPort));
+        env.put("MONGODB_CONNECTION_STRING", mongoUri);
+        env.put("MONGODB_DATABASE", database);
+        env.put("AUTH0_ISSUER_BASE_URL", auth.issuer());
+        env.put("AUTH0_API_AUDIENCE", StubAuthServer.AUDIENCE);
+        env.put("RESTAURANT_SVC_ADDRESS", restaurantService.baseUrl());
+        env.put("STRIPE_SK_TEST_KEY", "sk_test_loadtest");
+        env.put("STRIPE_API_BASE", stripe.apiBase());
+        env.put("STRIPE_ENDPOINT_SECRET", ENDPOINT_SECRET);
+        env.put("CLIENT_SVC_ADDRESS", "http://127.0.0.1");
+        env.put("CUSTOMER_API_SVC_ADDRESS", "http://127.0.0.1");
+        // background jobs would compete with the workload for Mongo without having anything to do
+        env.put("ORDERS_ARCHIVE_ENABLED", "false");
+        env.put("ORDERS_REAPER_ENABLED", "false");
+        // each synthetic user and owner drives far more traffic than a real one; the per-user limits would
+        // turn most of it away and the run would measure the 429 path
+        env.put("ADMISSION_ENABLED", "false");
+    }
+
+    private void seed(String mongoUri, String database, int perRestaurant) {
+        List<Order> orders = new ArrayList<>(this.restaurants * perRestaurant);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDateTime now = LocalDateTime.now();
+        for (int restaurant = 0; restaurant < this.restaurants; restaurant++) {
+            for (int i = 0; i < perRestaurant; i++) {
+                int user = random.nextInt(this.users);
+                List<CartItem> cartItems = new ArrayList<>();
+                for (int j = 0, items = random.nextInt(1, 4); j < items; j++) {
+                    int item = random.nextInt(StubRestaurantService.MENU_SIZE);
+                    cartItems.add(new CartItem(StubRestaurantService.menuItemId(item), random.nextInt(1, 4), "Menu item " + item));
+                }
+                Order order = new Order();
+                order.setUserId("auth0|customer-" + user);
+                order.setRestaurantId(this.restaurantService.restaurantId(restaurant));
+                order.setDeliveryDetails(new DeliveryDetails("customer-" + user + "@example.com", "Customer " + user,
+                        user + " Load Test Street", "Localhost"));
+                order.setCartItems(cartItems);
+                order.setTotalAmount(random.nextLong(1000, 10000));
+                order.setDeliveryPrice(299L);
+                order.setStatus(Order.Status.DELIVERED);
+                // well inside the archive window, so every page is served by the hot collection
+                order.setCreatedAt(now.minusMinutes(random.nextLong(7 * 24 * 60)));
+                orders.add(order);
+            }
+        }
+        try (MongoClient mongo = MongoClients.create(mongoUri)) {
+            ReactiveMongoTemplate template = new ReactiveMongoTemplate(mongo, database);
+            Flux.fromIterable(orders)
+                    .buffer(1000)
+                    .concatMap(batch -> template.insert(batch, Order.class))
+                    .blockLast(Duration.ofMinutes(5));
+        }
+        System.out.printf("Seeded %d delivered orders per restaurant%n", perRestaurant);
+    }
+
+    private void mintTokens() {
+        Duration ttl = this.warmup.plus(this.duration).plusHours(1);
+        this.customerTokens = new String[this.users];
+        for (int i = 0; i < this.users; i++) {
+            this.customerTokens[i] = "Bearer " + this.auth.mint("auth0|customer-" + i, ttl);
+        }
+        this.ownerTokens = new String[this.restaurants];
+        for (int i = 0; i < this.restaurants; i++) {
+            this.ownerTokens[i] = "Bearer " + this.auth.mint(StubRestaurantService.ownerId(i), ttl);
+        }
+    }
+
+    // an open workload: request n is due at start + n / rps whether or not earlier ones have completed
+    private Map<Route, RouteStats> drive() throws InterruptedException {
+        Map<Route, RouteStats> warmupStats = stats();
+        Map<Route, RouteStats> measured = stats();
+        long start = System.nanoTime();
+        long measureFrom = start + this.warmup.toNanos();
+        long end = measureFrom + this.duration.toNanos();
+        long[] issued = {0};
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        System.out.printf("Driving %.0f requests/s: %s warmup, %s measured%n", this.rps, this.warmup, this.duration);
+        ticker.scheduleAtFixedRate(() -> {
+            long due = (long) ((Math.min(System.nanoTime(), end) - start) * this.rps / 1e9);
+            for (; issued[0] < due; issued[0]++) {
+                long intended = start + (long) (issued[0] * 1e9 / this.rps);
+                Route route = this.pick();
+                this.issue(route, (intended < measureFrom ? warmupStats : measured).get(route), intended);
+            }
+        }, 0, TICK.toNanos(), TimeUnit.NANOSECONDS);
+        TimeUnit.NANOSECONDS.sleep(end - start);
+        ticker.shutdown();
+        ticker.awaitTermination(1, TimeUnit.SECONDS);
+        // let requests that are still running finish so that they count towards the tail
+        long drainUntil = System.nanoTime() + this.requestTimeout.toNanos();
+        while (this.inFlight.get() > 0 && System.nanoTime() < drainUntil) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        return measured;
+    }
+
+    private void issue(Route route, RouteStats stats, long intended) {
+        if (this.inFlight.incrementAndGet() > this.maxInFlight) {
+            this.inFlight.decrementAndGet();
+            stats.drop();
+            return;
+        }
+        Mono<Integer> request = switch (route) {
+            case CHECKOUT -> this.checkout();
+            case WEBHOOK -> this.webhook();
+            case LIST -> this.list("");
+            case LIST_SUMMARY -> this.list("&view=summary");
+            case PATCH -> this.patch();
+        };
+        if (request == null) {
+            this.inFlight.decrementAndGet();
+            stats.skip();
+            return;
+        }
+        request.timeout(this.requestTimeout).subscribe(
+                status -> stats.record(status, System.nanoTime() - intended),
+                e -> {
+                    stats.fail(System.nanoTime() - intended);
+                    this.inFlight.decrementAndGet();
+                },
+                this.inFlight::decrementAndGet);
+    }
+
+    private Mono<Integer> checkout() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = random.nextInt(this.users);
+        List<Map<String, Object>> cartItems = new ArrayList<>();
+        for (int i = 0, items = random.nextInt(1, 4); i < items; i++) {
+            int item = random.nextInt(StubRestaurantService.MENU_SIZE);
+            cartItems.add(Map.of("id", StubRestaurantService.menuItemId(item), "quantity", random.nextInt(1, 4), "name", "Menu item " + item));
+        }
+        Map<String, Object> body = Map.of(
+                "cartItems", cartItems,
+                "restaurantSlug", StubRestaurantService.slug(random.nextInt(this.restaurants)),
+                "deliveryDetails", Map.of(
+                        "email", "customer-" + user + "@example.com",
+                        "name", "Customer " + user,
+                        "addressLineOne", user + " Load Test Street",
+                        "city", "Localhost"));
+        return this.send(HttpMethod.POST, "/api/orders/create-checkout-session", this.customerTokens[user], null, this.json(body));
+    }
+
+    private Mono<Integer> webhook() {
+        StubStripe.CreatedSession session = this.stripe.poll();
+        if (session == null) {
+            return null;
+        }
+        int restaurant = this.restaurantService.restaurantIndex(session.restaurantId());
+        String payload = this.webhookSigner.completed(session);
+        return this.send(HttpMethod.POST, "/api/orders/stripe-checkout-webhook", null, this.webhookSigner.signature(payload), payload)
+                .doOnNext(status -> {
+                    if (status == 200) {
+                        this.paidOrders.add(new PaidOrder(session.orderId(), restaurant, Order.Status.IN_PROGRESS, System.nanoTime() + this.webhookSettle.toNanos()));
+                    }
+                });
+    }
+
+    // the first cursor page of a restaurant's orders
+    private Mono<Integer> list(String view) {
+        int restaurant = ThreadLocalRandom.current().nextInt(this.restaurants);
+        return this.send(HttpMethod.GET, "/api/orders/get-restaurant-orders?after=&size=" + this.listSize + view,
+                this.ownerTokens[restaurant], null, null);
+    }
+
+    // moves a paid order one step along IN_PROGRESS, OUT_FOR_DELIVERY, DELIVERED
+    private Mono<Integer> patch() {
+        PaidOrder head = this.paidOrders.peek();
+        if (head == null || head.readyAt() > System.nanoTime()) {
+            return null;
+        }
+        PaidOrder order = this.paidOrders.poll();
+        return this.send(HttpMethod.PATCH, "/api/orders/" + order.orderId() + "/status", this.ownerTokens[order.restaurant()], null,
+                        this.json(Map.of("status", order.next())))
+                .doOnNext(status -> {
+                    if (status == 200 && order.next() != Order.Status.DELIVERED) {
+                        Order.Status next = order.next() == Order.Status.IN_PROGRESS ? Order.Status.OUT_FOR_DELIVERY : Order.Status.DELIVERED;
+                        this.paidOrders.add(new PaidOrder(order.orderId(), order.restaurant(), next, System.nanoTime()));
+                    } else if (status == 409) {
+                        // the webhook has not been applied yet
+                        this.paidOrders.add(new PaidOrder(order.orderId(), order.restaurant(), order.next(), System.nanoTime() + this.webhookSettle.toNanos()));
+                    }
+                });
+    }
+
+    private Mono<Integer> send(HttpMethod method, String uri, String authorization, String stripeSignature, String body) {
+        return this.client
+                .headers(headers -> {
+                    if (authorization != null) {
+                        headers.set("Authorization", authorization);
+                    }
+                    if (stripeSignature != null) {
+                        headers.set("Stripe-Signature", stripeSignature);
+                    }
+                    if (body != null) {
+                        headers.set("Content-Type", "application/json");
+                    }
+                })
+                .request(method)
+                .uri(uri)
+                .send(ByteBufFlux.fromString(Mono.justOrEmpty(body)))
+                .responseSingle((res, content) -> content.then(Mono.just(res.status().code())));
+    }
+
+    private Route pick() {
+        int total = this.mix.values().stream().mapToInt(Integer::intValue).sum();
+        int value = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Route, Integer> entry : this.mix.entrySet()) {
+            value -= entry.getValue();
+            if (value < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    private Map<String, Object> report(Map<Route, RouteStats> measured, double seconds) {
+        Map<String, Object> routes = new LinkedHashMap<>();
+        measured.forEach((route, stats) -> routes.put(route.description, stats.summary(seconds)));
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("targetRps", this.rps);
+        report.put("durationSeconds", seconds);
+        report.put("mix", this.mix);
+        report.put("routes", routes);
+        return report;
+    }
+
+    private static void print(Map<Route, RouteStats> measured, double seconds) {
+        System.out.printf("%-45s %8s %8s %7s %7s %7s %7s %7s %9s %9s %9s %9s %9s%n",
+                "route", "count", "rps", "2xx", "4xx", "5xx", "failed", "skipped", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        measured.forEach((route, stats) -> {
+            Map<String, Object> s = stats.summary(seconds);
+            System.out.printf("%-45s %8d %8.1f %7d %7d %7d %7d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    route.description, s.get("count"), s.get("throughput"), s.get("ok"), s.get("clientErrors"),
+                    s.get("serverErrors"), s.get("failed"), (long) s.get("skipped") + (long) s.get("dropped"),
+                    s.get("p50Millis"), s.get("p90Millis"), s.get("p99Millis"), s.get("p999Millis"), s.get("maxMillis"));
+        });
+    }
+
+    private String json(Object value) {
+        try {
+            return this.objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<Route, RouteStats> stats() {
+        Map<Route, RouteStats> stats = new EnumMap<>(Route.class);
+        for (Route route : Route.values()) {
+            stats.put(route, new RouteStats(route.key));
+        }
+        return stats;
+    }
+
+    // e.g. checkout=1,webhook=1,list=3,list-summary=3,patch=2; routes left out are not driven
+    private static Map<Route, Integer> mix(String value) {
+        Map<Route, Integer> mix = new EnumMap<>(Route.class);
+        for (String part : value.split(",")) {
+            String[] weight = part.trim().split("=");
+            Route route = Route.valueOf(weight[0].trim().toUpperCase().replace('-', '_'));
+            int w = Integer.parseInt(weight[1].trim());
+            if (w > 0) {
+                mix.put(route, w);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("loadtest.mix has no routes: " + value);
+        }
+        return mix;
+    }
+
+    private static void awaitHealthy(HttpClient client, Process app, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!app.isAlive()) {
+                throw new IllegalStateException("The app exited with " + app.exitValue() + " during startup, see its log");
+            }
+            Integer status = client.get()
+                    .uri("/actuator/health")
+                    .responseSingle((res, content) -> content.then(Mono.just(res.status().code())))
+                    // health waits on Mongo, which may not be reachable yet
+                    .timeout(Duration.ofSeconds(5))
+                    .onErrorReturn(0)
+                    .block();
+            if (status != null && status == 200) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(500);
+        }
+        throw new IllegalStateException("The app did not become healthy within " + timeout);
+    }
+
+    static void dropDatabase(String mongoUri, String database) {
+        try (MongoClient mongo = MongoClients.create(mongoUri)) {
+            Mono.from(mongo.getDatabase(database).drop()).block(Duration.ofSeconds(30));
+        }
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static String property(String name, String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+}
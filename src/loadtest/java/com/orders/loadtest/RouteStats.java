@@ -0,0 +1,82 @@
+package com.orders.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// outcomes and latencies of one route over the measurement window. Latency runs from when the request was
+// due to start, not from when it was sent, so a stalled app shows up as latency instead of as fewer requests
+class RouteStats {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(2);
+
+    private final String route;
+    private final Histogram latencies = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    // due but not sent: nothing to act on (skipped) or too many requests in flight (dropped)
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    RouteStats(String route) {
+        this.route = route;
+    }
+
+    String route() {
+        return this.route;
+    }
+
+    void record(int status, long latencyNanos) {
+        this.latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_MICROS));
+        if (status < 400) {
+            this.ok.increment();
+        } else if (status < 500) {
+            this.clientErrors.increment();
+        } else {
+            this.serverErrors.increment();
+        }
+    }
+
+    // connection errors and timeouts
+    void fail(long latencyNanos) {
+        this.latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_MICROS));
+        this.failed.increment();
+    }
+
+    void skip() {
+        this.skipped.increment();
+    }
+
+    void drop() {
+        this.dropped.increment();
+    }
+
+    Map<String, Object> summary(double seconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long count = this.latencies.getTotalCount();
+        summary.put("count", count);
+        summary.put("throughput", count / seconds);
+        summary.put("ok", this.ok.sum());
+        summary.put("clientErrors", this.clientErrors.sum());
+        summary.put("serverErrors", this.serverErrors.sum());
+        summary.put("failed", this.failed.sum());
+        summary.put("skipped", this.skipped.sum());
+        summary.put("dropped", this.dropped.sum());
+        summary.put("p50Millis", millis(this.latencies.getValueAtPercentile(50)));
+        summary.put("p90Millis", millis(this.latencies.getValueAtPercentile(90)));
+        summary.put("p99Millis", millis(this.latencies.getValueAtPercentile(99)));
+        summary.put("p999Millis", millis(this.latencies.getValueAtPercentile(99.9)));
+        summary.put("maxMillis", millis(this.latencies.getMaxValue()));
+        return summary;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
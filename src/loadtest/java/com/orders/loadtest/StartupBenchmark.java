@@ -0,0 +1,149 @@
+package com.orders.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// time to first request of the fast-startup build (./mvnw -Pfast-startup package -DskipTests) against the build it
+// replaces. baseline is that build: the fat jar from before the fast-startup change, which also runs OIDC discovery
+// against the issuer while its context starts; build it from that commit with ./mvnw package -DskipTests and pass it
+// as loadtest.startup.baseline-jar. The fast-startup jar then runs the way the image runs it: plain (reflection-based
+// Spring, lazy discovery), with the AOT-generated bean definitions, and with those plus a class data sharing archive
+// trained here like the Dockerfile does. A request counts once GET /api/orders/user answers 200 for a freshly minted
+// token, which includes the JWKS lookup. Needs the Mongo at loadtest.mongo-uri
+public class StartupBenchmark {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(10);
+
+    public static void main(String[] args) throws Exception {
+        Path jar = Path.of(LoadTest.property("startup.jar", "target/orders-0.0.1-SNAPSHOT.jar"));
+        if (!Files.isRegularFile(jar) || !Files.isDirectory(jar.resolveSibling("lib"))) {
+            throw new IllegalStateException(jar + " and its lib/ are missing, build them with ./mvnw -Pfast-startup package -DskipTests");
+        }
+        Path baselineJar = Path.of(LoadTest.property("startup.baseline-jar", "target/baseline/orders-0.0.1-SNAPSHOT.jar"));
+        if (!Files.isRegularFile(baselineJar)) {
+            throw new IllegalStateException(baselineJar + " is missing, build the fat jar of the commit before the fast-startup change "
+                    + "with ./mvnw package -DskipTests and copy it there");
+        }
+        int runs = Integer.parseInt(LoadTest.property("startup.runs", "5"));
+        Duration timeout = Duration.parse("PT" + LoadTest.property("startup-timeout", "120s"));
+        String mongoUri = LoadTest.property("mongo-uri", "mongodb://127.0.0.1:27017");
+        String database = "orders_startup_" + System.currentTimeMillis();
+        Path workDir = Path.of(LoadTest.property("startup.work-dir", "target/startup"));
+        Path result = Path.of(LoadTest.property("startup.result", "target/startup-result.json"));
+        Files.createDirectories(workDir);
+
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        boolean served = false;
+        try (StubAuthServer auth = new StubAuthServer();
+             StubRestaurantService restaurantService = new StubRestaurantService(1, Duration.ZERO, objectMapper);
+             StubStripe stripe = new StubStripe(Duration.ZERO)) {
+            Path archive = workDir.resolve("app.jsa");
+            Files.deleteIfExists(archive);
+            Process training = start(jar, List.of("-XX:ArchiveClassesAtExit=" + archive, "-Dspring.aot.enabled=true", "-Dspring.context.exit=onRefresh"),
+                    workDir.resolve("training.log"), LoadTest.freePort(), mongoUri, database, auth, restaurantService, stripe);
+            if (!training.waitFor(timeout.toSeconds(), TimeUnit.SECONDS) || training.exitValue() != 0 || !Files.isRegularFile(archive)) {
+                training.destroyForcibly();
+                throw new IllegalStateException("The training run failed, see " + workDir.resolve("training.log"));
+            }
+
+            Map<String, Mode> modes = new LinkedHashMap<>();
+            modes.put("baseline", new Mode(baselineJar, List.of()));
+            modes.put("plain", new Mode(jar, List.of()));
+            modes.put("aot", new Mode(jar, List.of("-Dspring.aot.enabled=true")));
+            modes.put("aot+cds", new Mode(jar, List.of("-Dspring.aot.enabled=true", "-XX:SharedArchiveFile=" + archive)));
+            Map<String, List<Double>> millis = new LinkedHashMap<>();
+            modes.keySet().forEach(mode -> millis.put(mode, new ArrayList<>()));
+            String token = "Bearer " + auth.mint("auth0|startup", Duration.ofHours(1));
+            // alternate the modes so that drift on the box is spread evenly over them
+            for (int run = 0; run < runs; run++) {
+                for (Map.Entry<String, Mode> mode : modes.entrySet()) {
+                    int port = LoadTest.freePort();
+                    long started = System.nanoTime();
+                    Process app = start(mode.getValue().jar(), mode.getValue().jvmArgs(), workDir.resolve(mode.getKey() + ".log"), port, mongoUri, database, auth, restaurantService, stripe);
+                    try {
+                        long firstRequest = awaitFirstRequest(port, token, app, started + timeout.toNanos());
+                        millis.get(mode.getKey()).add((firstRequest - started) / 1e6);
+                        served = true;
+                    } finally {
+                        app.destroy();
+                        app.waitFor(30, TimeUnit.SECONDS);
+                    }
+                }
+            }
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            System.out.printf("%-12s %10s %10s %10s  (time to first request, ms over %d runs)%n", "mode", "min", "median", "max", runs);
+            millis.forEach((mode, samples) -> {
+                List<Double> sorted = samples.stream().sorted().toList();
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("minMillis", sorted.get(0));
+                summary.put("medianMillis", sorted.get(sorted.size() / 2));
+                summary.put("maxMillis", sorted.get(sorted.size() - 1));
+                summary.put("samplesMillis", samples);
+                report.put(mode, summary);
+                System.out.printf("%-12s %10.0f %10.0f %10.0f%n", mode, summary.get("minMillis"), summary.get("medianMillis"), summary.get("maxMillis"));
+            });
+            objectMapper.writeValue(result.toFile(), report);
+            System.out.println("Results written to " + result);
+        } finally {
+            // the apps only create the database once they have reached Mongo
+            if (served) {
+                LoadTest.dropDatabase(mongoUri, database);
+            }
+        }
+    }
+
+    // the artifact a mode runs and the JVM flags it runs it with
+    private record Mode(Path jar, List<String> jvmArgs) {
+    }
+
+    private static Process start(Path jar, List<String> jvmArgs, Path log, int port, String mongoUri, String database,
+                                 StubAuthServer auth, StubRestaurantService restaurantService, StubStripe stripe) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(jar.toString());
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(log.toString()));
+        LoadTest.environment(builder.environment(), port, LoadTest.freePort(), mongoUri, database, auth, restaurantService, stripe);
+        return builder.start();
+    }
+
+    // System.nanoTime() of the first 200 from the app
+    private static long awaitFirstRequest(int port, String token, Process app, long deadline) throws InterruptedException {
+        HttpClient client = HttpClient.create()
+                .baseUrl("http://127.0.0.1:" + port)
+                .headers(headers -> headers.set("Authorization", token));
+        while (System.nanoTime() < deadline) {
+            if (!app.isAlive()) {
+                throw new IllegalStateException("The app exited with " + app.exitValue() + " during startup, see its log");
+            }
+            Integer status = client.get()
+                    .uri("/api/orders/user")
+                    .responseSingle((res, content) -> content.then(Mono.just(res.status().code())))
+                    .timeout(Duration.ofSeconds(5))
+                    .onErrorReturn(0)
+                    .block();
+            if (status != null && status == 200) {
+                return System.nanoTime();
+            }
+            TimeUnit.NANOSECONDS.sleep(POLL_INTERVAL.toNanos());
+        }
+        throw new IllegalStateException("The app did not answer within the startup timeout");
+    }
+}
@@ -0,0 +1,91 @@
+package com.orders.loadtest;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+// stands in for the Auth0 tenant: serves OIDC discovery and a JWKS for one RSA key, and mints RS256 tokens
+// signed with it, so the app verifies real signatures without leaving the box
+class StubAuthServer implements AutoCloseable {
+
+    static final String AUDIENCE = "orders-loadtest";
+
+    private final RSAKey key;
+    private final RSASSASigner signer;
+    private final DisposableServer server;
+    private final String issuer;
+
+    StubAuthServer() throws JOSEException {
+        this.key = new RSAKeyGenerator(2048).keyID("loadtest").generate();
+        this.signer = new RSASSASigner(this.key);
+        String jwks = new JWKSet(this.key.toPublicJWK()).toString();
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .get("/.well-known/openid-configuration", (req, res) -> res
+                                .header("Content-Type", "application/json")
+                                .sendString(Mono.fromSupplier(this::discovery)))
+                        .get("/.well-known/jwks.json", (req, res) -> res
+                                .header("Content-Type", "application/json")
+                                .sendString(Mono.just(jwks))))
+                .bindNow();
+        // Auth0 issuers end with a slash, and the app checks the discovery document's issuer against it
+        this.issuer = "http://127.0.0.1:" + this.server.port() + "/";
+    }
+
+    String issuer() {
+        return this.issuer;
+    }
+
+    // a token for subject that stays valid for the whole run
+    String mint(String subject, Duration ttl) {
+        Instant now = Instant.now();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(this.issuer)
+                .subject(subject)
+                .audience(AUDIENCE)
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(ttl)))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(this.key.getKeyID()).build(), claims);
+        try {
+            jwt.sign(this.signer);
+        } catch (JOSEException e) {
+            throw new IllegalStateException(e);
+        }
+        return jwt.serialize();
+    }
+
+    private String discovery() {
+        return """
+                {
+                  "issuer": "%1$s",
+                  "jwks_uri": "%1$s.well-known/jwks.json",
+                  "authorization_endpoint": "%1$sauthorize",
+                  "token_endpoint": "%1$soauth/token",
+                  "response_types_supported": ["code"],
+                  "subject_types_supported": ["public"],
+                  "id_token_signing_alg_values_supported": ["RS256"]
+                }
+                """.formatted(this.issuer);
+    }
+
+    @Override
+    public void close() {
+        this.server.disposeNow();
+    }
+}
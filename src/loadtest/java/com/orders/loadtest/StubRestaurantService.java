@@ -0,0 +1,110 @@
+package com.orders.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// stands in for the restaurant service: restaurant i is owned by ownerId(i) and has slug(i) and a fixed menu.
+// Answers the two calls the app makes, /cms/{auth0Id} and /customer/{slug}, after latency
+class StubRestaurantService implements AutoCloseable {
+
+    static final int MENU_SIZE = 20;
+
+    private final List<String> restaurantIds;
+    private final DisposableServer server;
+
+    StubRestaurantService(int restaurants, Duration latency, ObjectMapper objectMapper) {
+        this.restaurantIds = new ArrayList<>(restaurants);
+        for (int i = 0; i < restaurants; i++) {
+            this.restaurantIds.add("%024x".formatted(0x10000 + i));
+        }
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .get("/cms/{auth0Id}", (req, res) -> {
+                            int restaurant = index(req.param("auth0Id"), "auth0|owner-");
+                            if (restaurant < 0 || restaurant >= restaurants) {
+                                return res.status(404).send();
+                            }
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.delay(latency).thenReturn(json(objectMapper, Map.of("id", this.restaurantIds.get(restaurant)))));
+                        })
+                        .get("/customer/{slug}", (req, res) -> {
+                            int restaurant = index(req.param("slug"), "restaurant-");
+                            if (restaurant < 0 || restaurant >= restaurants) {
+                                return res.status(404).send();
+                            }
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.delay(latency).thenReturn(json(objectMapper, this.restaurant(restaurant))));
+                        }))
+                .bindNow();
+    }
+
+    static String ownerId(int restaurant) {
+        return "auth0|owner-" + restaurant;
+    }
+
+    static String slug(int restaurant) {
+        return "restaurant-" + restaurant;
+    }
+
+    static String menuItemId(int item) {
+        return "menu-item-" + item;
+    }
+
+    String restaurantId(int restaurant) {
+        return this.restaurantIds.get(restaurant);
+    }
+
+    int restaurantIndex(String restaurantId) {
+        return this.restaurantIds.indexOf(restaurantId);
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + this.server.port();
+    }
+
+    private Map<String, Object> restaurant(int restaurant) {
+        List<Map<String, Object>> menuItems = new ArrayList<>(MENU_SIZE);
+        for (int item = 0; item < MENU_SIZE; item++) {
+            menuItems.add(Map.of("id", menuItemId(item), "name", "Menu item " + item, "price", 500L + 50L * item));
+        }
+        return Map.of(
+                "id", this.restaurantIds.get(restaurant),
+                "restaurantName", "Restaurant " + restaurant,
+                "deliveryPrice", 299L,
+                "menuItems", menuItems,
+                "slug", slug(restaurant));
+    }
+
+    private static int index(String value, String prefix) {
+        if (value == null || !value.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String json(ObjectMapper objectMapper, Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.server.disposeNow();
+    }
+}
@@ -0,0 +1,84 @@
+package com.orders.loadtest;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// stands in for the Stripe API: creates checkout sessions after latency and queues each one, with the order
+// and amount it was created for, for the webhook workload to complete
+class StubStripe implements AutoCloseable {
+
+    record CreatedSession(String sessionId, String orderId, String restaurantId, long amountTotal) {
+    }
+
+    private final AtomicLong sessions = new AtomicLong();
+    private final Queue<CreatedSession> created = new ConcurrentLinkedQueue<>();
+    private final DisposableServer server;
+
+    StubStripe(Duration latency) {
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .post("/v1/checkout/sessions", (req, res) -> res
+                                .header("Content-Type", "application/json")
+                                .sendString(req.receive()
+                                        .aggregate()
+                                        .asString(StandardCharsets.UTF_8)
+                                        .map(this::createSession)
+                                        .delayElement(latency))))
+                .bindNow();
+    }
+
+    String apiBase() {
+        return "http://127.0.0.1:" + this.server.port();
+    }
+
+    // the oldest session that has not been completed yet, or null
+    CreatedSession poll() {
+        return this.created.poll();
+    }
+
+    private String createSession(String form) {
+        Map<String, List<String>> params = new QueryStringDecoder(form, StandardCharsets.UTF_8, false).parameters();
+        long amountTotal = first(params, "shipping_options[0][shipping_rate_data][fixed_amount][amount]");
+        for (int i = 0; params.containsKey("line_items[" + i + "][quantity]"); i++) {
+            amountTotal += first(params, "line_items[" + i + "][price_data][unit_amount]")
+                    * first(params, "line_items[" + i + "][quantity]");
+        }
+        String sessionId = "cs_test_" + this.sessions.incrementAndGet();
+        String orderId = params.get("metadata[orderId]").get(0);
+        String restaurantId = params.get("metadata[restaurantId]").get(0);
+        this.created.add(new CreatedSession(sessionId, orderId, restaurantId, amountTotal));
+        return """
+                {
+                  "id": "%1$s",
+                  "object": "checkout.session",
+                  "mode": "payment",
+                  "status": "open",
+                  "amount_total": %2$d,
+                  "metadata": {"orderId": "%3$s", "restaurantId": "%4$s"},
+                  "url": "https://checkout.stripe.com/c/pay/%1$s"
+                }
+                """.formatted(sessionId, amountTotal, orderId, restaurantId);
+    }
+
+    private static long first(Map<String, List<String>> params, String name) {
+        List<String> values = params.get(name);
+        return values == null ? 0L : Long.parseLong(values.get(0));
+    }
+
+    @Override
+    public void close() {
+        this.server.disposeNow();
+    }
+}
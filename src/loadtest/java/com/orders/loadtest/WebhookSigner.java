@@ -0,0 +1,58 @@
+package com.orders.loadtest;
+
+import com.stripe.Stripe;
+import com.stripe.net.Webhook;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// builds checkout.session.completed events for sessions created by StubStripe and signs them the way Stripe
+// does, so they pass Webhook.constructEvent with the endpoint secret the app was started with
+class WebhookSigner {
+
+    private final String endpointSecret;
+    private final AtomicLong events = new AtomicLong();
+
+    WebhookSigner(String endpointSecret) {
+        this.endpointSecret = endpointSecret;
+    }
+
+    String completed(StubStripe.CreatedSession session) {
+        long created = Webhook.Util.getTimeNow();
+        // the app only deserializes events of the API version its stripe-java was built for
+        return """
+                {
+                  "id": "evt_test_%1$d",
+                  "object": "event",
+                  "api_version": "%2$s",
+                  "created": %3$d,
+                  "livemode": false,
+                  "pending_webhooks": 1,
+                  "type": "checkout.session.completed",
+                  "data": {
+                    "object": {
+                      "id": "%4$s",
+                      "object": "checkout.session",
+                      "mode": "payment",
+                      "status": "complete",
+                      "payment_status": "paid",
+                      "amount_total": %5$d,
+                      "metadata": {"orderId": "%6$s", "restaurantId": "%7$s"}
+                    }
+                  }
+                }
+                """.formatted(this.events.incrementAndGet(), Stripe.API_VERSION, created,
+                session.sessionId(), session.amountTotal(), session.orderId(), session.restaurantId());
+    }
+
+    // the Stripe-Signature header for payload, signed now
+    String signature(String payload) {
+        long timestamp = Webhook.Util.getTimeNow();
+        try {
+            return "t=" + timestamp + ",v1=" + Webhook.Util.computeHmacSha256(this.endpointSecret, timestamp + "." + payload);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
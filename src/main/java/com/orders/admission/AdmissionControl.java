@@ -0,0 +1,217 @@
+package com.orders.admission;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// per-route rate limits, one in-memory token bucket per auth0 sub and instance, answered with 429. They run after
+// the security filter chain, so they save the handler's work but not the token check; unauthenticated requests pass
+@Component
+public class AdmissionControl implements MeterBinder {
+
+    // the value of a bucket the sweeper has retired; a request still holding it looks its sub up again
+    private static final long EVICTED = Long.MIN_VALUE;
+
+    private final boolean enabled;
+    private final int stripes;
+    private final long idleAfter;
+    private final Duration sweepInterval;
+    private final LongSupplier nanoClock;
+    private final List<Limiter> limiters = new CopyOnWriteArrayList<>();
+    private final LongAdder rejected = new LongAdder();
+    private Disposable sweeping;
+
+    @Autowired
+    public AdmissionControl(
+            @Value("${admission.enabled}") boolean enabled,
+            @Value("${admission.stripes}") int stripes,
+            @Value("${admission.idle-after}") Duration idleAfter,
+            @Value("${admission.sweep-interval}") Duration sweepInterval
+    ) {
+        this(enabled, stripes, idleAfter, sweepInterval, System::nanoTime);
+    }
+
+    AdmissionControl(boolean enabled, int stripes, Duration idleAfter, Duration sweepInterval, LongSupplier nanoClock) {
+        this.enabled = enabled;
+        // a power of two, so that a stripe is picked with a shift
+        this.stripes = Integer.highestOneBit(Math.max(1, stripes * 2 - 1));
+        this.idleAfter = idleAfter.toNanos();
+        this.sweepInterval = sweepInterval;
+        this.nanoClock = nanoClock;
+    }
+
+    // admits at most limit (e.g. "120/1m") per sub; routes that share a filter share its buckets
+    public HandlerFilterFunction<ServerResponse, ServerResponse> limit(String route, String limit) {
+        if (!this.enabled) {
+            return (request, next) -> next.handle(request);
+        }
+        Limiter limiter = new Limiter(route, RateLimit.parse(limit));
+        this.limiters.add(limiter);
+        return limiter;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (this.limiters.isEmpty()) {
+            return;
+        }
+        this.sweeping = Flux.interval(this.sweepInterval)
+                .onBackpressureDrop()
+                .subscribe(tick -> this.sweep(this.nanoClock.getAsLong()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (this.sweeping != null) {
+            this.sweeping.dispose();
+        }
+    }
+
+    // drops buckets full for idleAfter, which admit exactly what a new bucket would
+    void sweep(long now) {
+        long cutoff = now - this.idleAfter;
+        for (Limiter limiter : this.limiters) {
+            for (ConcurrentHashMap<String, AtomicLong> stripe : limiter.stripes) {
+                for (Map.Entry<String, AtomicLong> entry : stripe.entrySet()) {
+                    AtomicLong bucket = entry.getValue();
+                    long tat = bucket.get();
+                    if (tat != EVICTED && tat - cutoff <= 0 && bucket.compareAndSet(tat, EVICTED)) {
+                        stripe.remove(entry.getKey(), bucket);
+                    }
+                }
+            }
+        }
+    }
+
+    long buckets() {
+        long buckets = 0;
+        for (Limiter limiter : this.limiters) {
+            for (ConcurrentHashMap<String, AtomicLong> stripe : limiter.stripes) {
+                buckets += stripe.size();
+            }
+        }
+        return buckets;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // rejections per route show up in http.server.requests as 429s by uri
+        FunctionCounter.builder("admission.rejected", this.rejected, LongAdder::sum).register(registry);
+        Gauge.builder("admission.buckets", this, AdmissionControl::buckets).register(registry);
+    }
+
+    // "10/1m" admits a burst of 10, then one every 6 seconds
+    record RateLimit(long permits, Duration period) {
+
+        static RateLimit parse(String limit) {
+            String[] parts = limit.trim().split("/", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected <permits>/<period>, got " + limit);
+            }
+            RateLimit rateLimit = new RateLimit(Long.parseLong(parts[0].trim()), DurationStyle.detectAndParse(parts[1].trim()));
+            if (rateLimit.permits() <= 0 || rateLimit.period().isNegative() || rateLimit.period().isZero()) {
+                throw new IllegalArgumentException("Expected positive permits and period, got " + limit);
+            }
+            return rateLimit;
+        }
+    }
+
+    // the buckets of one limit as a GCRA: each is an AtomicLong theoretical arrival time, taken with one CAS.
+    // Striped by the high bits of the sub's hash, so new buckets insert into independent maps
+    final class Limiter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+        private final String route;
+        private final long interval;
+        private final long burst;
+        private final int shift;
+        private final ConcurrentHashMap<String, AtomicLong>[] stripes;
+
+        @SuppressWarnings("unchecked")
+        Limiter(String route, RateLimit limit) {
+            this.route = route;
+            this.interval = Math.max(1, limit.period().toNanos() / limit.permits());
+            this.burst = this.interval * limit.permits();
+            this.shift = 32 - Integer.numberOfTrailingZeros(AdmissionControl.this.stripes);
+            this.stripes = new ConcurrentHashMap[AdmissionControl.this.stripes];
+            for (int i = 0; i < this.stripes.length; i++) {
+                this.stripes[i] = new ConcurrentHashMap<>();
+            }
+        }
+
+        // keyed on the sub of the token the security filter chain already verified; nothing is decoded here
+        @Override
+        public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
+            return request.principal()
+                    .filter(JwtAuthenticationToken.class::isInstance)
+                    .map(principal -> this.tryAcquire(((JwtAuthenticationToken) principal).getToken().getSubject(), AdmissionControl.this.nanoClock.getAsLong()))
+                    .defaultIfEmpty(0L)
+                    .flatMap(wait -> wait == 0 ? next.handle(request) : this.reject(wait));
+        }
+
+        // 0 when the request is admitted, otherwise the nanoseconds until the sub's bucket has a token again
+        long tryAcquire(String subject, long now) {
+            ConcurrentHashMap<String, AtomicLong> stripe = this.stripe(subject);
+            AtomicLong bucket = stripe.get(subject);
+            while (true) {
+                if (bucket == null) {
+                    // a new bucket is full: the next request is due now
+                    bucket = stripe.computeIfAbsent(subject, key -> new AtomicLong(now));
+                }
+                long tat = bucket.get();
+                if (tat == EVICTED) {
+                    stripe.remove(subject, bucket);
+                    bucket = null;
+                    continue;
+                }
+                long next = (tat - now > 0 ? tat : now) + this.interval;
+                long wait = next - now - this.burst;
+                if (wait > 0) {
+                    AdmissionControl.this.rejected.increment();
+                    return wait;
+                }
+                if (bucket.compareAndSet(tat, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        private ConcurrentHashMap<String, AtomicLong> stripe(String subject) {
+            // the shift by 32 of a single stripe is a shift by 0 in Java, hence the mask
+            return this.stripes[((subject.hashCode() * 0x9E3779B9) >>> this.shift) & (this.stripes.length - 1)];
+        }
+
+        private Mono<ServerResponse> reject(long wait) {
+            return ServerResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1))))
+                    .bodyValue("Too many " + this.route + " requests, retry later");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.orders.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+// auth0Id -> id of the restaurant that user owns, as resolved by the restaurant service
+@Component
+public class OwnerRestaurantCache implements MeterBinder {
+
+    private final AsyncCache<String, String> cache;
+
+    @Autowired
+    public OwnerRestaurantCache(
+            @Value("${cache.owner-restaurant.ttl}") Duration ttl,
+            @Value("${cache.owner-restaurant.max-size}") long maxSize
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+    }
+
+    public Mono<String> get(String auth0Id, Supplier<Mono<String>> loader) {
+        // concurrent misses for the same owner share the first caller's in-flight lookup;
+        // a cancelled caller must not cancel the lookup the others are waiting on
+        return Mono.fromFuture(() -> this.cache.get(auth0Id, (key, executor) -> loader.get().toFuture()), true);
+    }
+
+    public void invalidate(String auth0Id) {
+        this.cache.synchronous().invalidate(auth0Id);
+    }
+
+    public void invalidateAll() {
+        this.cache.synchronous().invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return this.cache.synchronous().stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, this.cache, "owner-restaurant");
+    }
+}
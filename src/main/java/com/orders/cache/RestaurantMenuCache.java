@@ -0,0 +1,66 @@
+package com.orders.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.orders.client.RestaurantServiceClient;
+import com.orders.routes.stripe.dto.Restaurant;
+import com.orders.routes.stripe.dto.RestaurantMenu;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+// restaurant slug -> menu price index, as served by the restaurant service's /customer/{slug}
+@Component
+public class RestaurantMenuCache implements MeterBinder {
+
+    private final AsyncLoadingCache<String, RestaurantMenu> cache;
+
+    @Autowired
+    public RestaurantMenuCache(
+            @Value("${cache.restaurant-menu.ttl}") Duration ttl,
+            @Value("${cache.restaurant-menu.refresh-after}") Duration refreshAfter,
+            @Value("${cache.restaurant-menu.max-size}") long maxSize,
+            RestaurantServiceClient restaurantServiceClient
+    ) {
+        this(ttl, refreshAfter, maxSize, restaurantServiceClient::getRestaurant);
+    }
+
+    public RestaurantMenuCache(Duration ttl, Duration refreshAfter, long maxSize, Function<String, Mono<Restaurant>> loader) {
+        // entries older than refreshAfter are still served while a single background reload runs;
+        // only entries older than ttl make callers wait on the restaurant service
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(refreshAfter)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync((slug, executor) -> loader.apply(slug)
+                        .map(RestaurantMenu::new)
+                        .toFuture());
+    }
+
+    // concurrent loads of the same slug share one upstream call
+    public Mono<RestaurantMenu> get(String slug) {
+        return Mono.fromFuture(() -> this.cache.get(slug), true);
+    }
+
+    public void invalidate(String slug) {
+        this.cache.synchronous().invalidate(slug);
+    }
+
+    public CacheStats stats() {
+        return this.cache.synchronous().stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, this.cache, "restaurant-menu");
+    }
+}
@@ -0,0 +1,147 @@
+package com.orders.client;
+
+import com.orders.routes.root.dto.Restaurant;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+// the one client every caller of the restaurant service goes through: a sized connection pool that evicts idle
+// connections, a timeout per call type, jittered retries for these idempotent GETs and a circuit breaker that
+// fails fast with 503 while the restaurant service is unhealthy
+@Component
+public class RestaurantServiceClient implements MeterBinder, DisposableBean {
+
+    private static final String NAME = "restaurant-service";
+
+    private final ConnectionProvider connectionProvider;
+    private final WebClient webClient;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final CircuitBreaker circuitBreaker;
+    private final Duration cmsTimeout;
+    private final Duration customerTimeout;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+
+    @Autowired
+    public RestaurantServiceClient(
+            WebClient.Builder webClientBuilder,
+            @Value("${restaurant-service.base-url}") String baseUrl,
+            @Value("${restaurant-service.pool.max-connections}") int maxConnections,
+            @Value("${restaurant-service.pool.max-pending-acquires}") int maxPendingAcquires,
+            @Value("${restaurant-service.pool.max-idle-time}") Duration maxIdleTime,
+            @Value("${restaurant-service.connect-timeout}") Duration connectTimeout,
+            @Value("${restaurant-service.cms-timeout}") Duration cmsTimeout,
+            @Value("${restaurant-service.customer-timeout}") Duration customerTimeout,
+            @Value("${restaurant-service.max-retries}") int maxRetries,
+            @Value("${restaurant-service.retry-backoff}") Duration retryBackoff,
+            @Value("${restaurant-service.breaker.failure-rate-threshold}") float failureRateThreshold,
+            @Value("${restaurant-service.breaker.window-size}") int windowSize,
+            @Value("${restaurant-service.breaker.open-duration}") Duration openDuration
+    ) {
+        this.connectionProvider = ConnectionProvider.builder(NAME)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(maxPendingAcquires)
+                // waiting for a pooled connection counts against the connect budget
+                .pendingAcquireTimeout(connectTimeout)
+                .maxIdleTime(maxIdleTime)
+                .evictInBackground(maxIdleTime)
+                .metrics(true)
+                .build();
+        HttpClient httpClient = HttpClient.create(this.connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis());
+        this.webClient = webClientBuilder
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+        this.circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowSize(windowSize)
+                .minimumNumberOfCalls(windowSize)
+                .failureRateThreshold(failureRateThreshold)
+                .waitDurationInOpenState(openDuration)
+                .permittedNumberOfCallsInHalfOpenState(Math.max(1, windowSize / 10))
+                // a 404 or 401 is an answer, not a sign the restaurant service is unhealthy
+                .recordException(RestaurantServiceClient::isUpstreamFailure)
+                .build());
+        this.circuitBreaker = this.circuitBreakerRegistry.circuitBreaker(NAME);
+        this.cmsTimeout = cmsTimeout;
+        this.customerTimeout = customerTimeout;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+    }
+
+    // the restaurant owned by the caller, from /cms/{auth0Id}; the caller's bearer token is passed through
+    public Mono<Restaurant> getOwnerRestaurant(String auth0Id, String authorizationHeader) {
+        return this.resilient(this.webClient.get()
+                .uri("/cms/{auth0Id}", auth0Id)
+                .header("Authorization", authorizationHeader)
+                .retrieve()
+                .bodyToMono(Restaurant.class), this.cmsTimeout);
+    }
+
+    // a restaurant with its menu, from the public /customer/{slug}
+    public Mono<com.orders.routes.stripe.dto.Restaurant> getRestaurant(String slug) {
+        return this.resilient(this.webClient.get()
+                .uri("/customer/{slug}", slug)
+                .retrieve()
+                .bodyToMono(com.orders.routes.stripe.dto.Restaurant.class), this.customerTimeout);
+    }
+
+    public CircuitBreaker.State breakerState() {
+        return this.circuitBreaker.getState();
+    }
+
+    private <T> Mono<T> resilient(Mono<T> call, Duration timeout) {
+        // every attempt is timed out and recorded by the breaker on its own; an open breaker is not retried
+        return call
+                .timeout(timeout)
+                .transformDeferred(CircuitBreakerOperator.of(this.circuitBreaker))
+                .retryWhen(Retry.backoff(this.maxRetries, this.retryBackoff)
+                        .jitter(0.5)
+                        .filter(RestaurantServiceClient::isUpstreamFailure)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .onErrorMap(CallNotPermittedException.class,
+                        e -> new RestaurantServiceException(HttpStatus.SERVICE_UNAVAILABLE, "Restaurant service unavailable", e))
+                .onErrorMap(TimeoutException.class,
+                        e -> new RestaurantServiceException(HttpStatus.GATEWAY_TIMEOUT, "Restaurant service timed out", e));
+    }
+
+    private static boolean isUpstreamFailure(Throwable e) {
+        if (e instanceof WebClientResponseException ex) {
+            return ex.getStatusCode().is5xxServerError();
+        }
+        return e instanceof TimeoutException || e instanceof WebClientRequestException;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // the pool reports itself under reactor.netty.connection.provider.* (name=restaurant-service)
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(this.circuitBreakerRegistry).bindTo(registry);
+    }
+
+    @Override
+    public void destroy() {
+        this.connectionProvider.dispose();
+    }
+}
@@ -0,0 +1,12 @@
+package com.orders.client;
+
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.server.ResponseStatusException;
+
+// the restaurant service could not be reached in time or its circuit breaker is open
+public class RestaurantServiceException extends ResponseStatusException {
+
+    public RestaurantServiceException(HttpStatusCode status, String reason, Throwable cause) {
+        super(status, reason, cause);
+    }
+}
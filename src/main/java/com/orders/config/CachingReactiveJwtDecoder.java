@@ -0,0 +1,80 @@
+package com.orders.config;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.orders.utils.MonoTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+// remembers tokens the delegate has already verified, so a client sending the same bearer token on
+// every request pays for signature verification once per token instead of once per request
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+
+    private final ReactiveJwtDecoder delegate;
+    private final AsyncCache<String, Jwt> cache;
+    private final MeterRegistry meterRegistry;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, long maxSize, Duration maxTtl, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .expireAfter(new Expiry<String, Jwt>() {
+                    @Override
+                    public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+                        // never serve a token past its exp claim
+                        Duration ttl = maxTtl;
+                        if (jwt.getExpiresAt() != null) {
+                            Duration untilExpiry = Duration.between(Instant.now(), jwt.getExpiresAt());
+                            ttl = untilExpiry.compareTo(maxTtl) < 0 ? untilExpiry : maxTtl;
+                        }
+                        return Math.max(0, ttl.toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .buildAsync();
+        // hit ratio here, verification latency under security.jwt.decode
+        CaffeineCacheMetrics.monitor(meterRegistry, this.cache, "jwt");
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) throws JwtException {
+        // keyed by a hash so raw bearer tokens are not kept around as map keys; rejected tokens are not cached
+        return Mono.fromFuture(() -> this.cache.get(hash(token), (key, executor) -> this.verify(token).toFuture()), true);
+    }
+
+    private Mono<Jwt> verify(String token) {
+        return MonoTimer.time(this.delegate.decode(token), this.meterRegistry, "security.jwt.decode");
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
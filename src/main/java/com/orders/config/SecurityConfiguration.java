@@ -1,5 +1,7 @@
 package com.orders.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -7,14 +9,16 @@ import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
-import org.springframework.security.oauth2.jwt.ReactiveJwtDecoders;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.reactive.CorsConfigurationSource;
 import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
 import org.springframework.web.reactive.config.EnableWebFlux;
 
+import java.time.Duration;
 import java.util.List;
 
 @Configuration
@@ -38,8 +42,22 @@ public class SecurityConfiguration {
     }
 
     @Bean
-    public ReactiveJwtDecoder jwtDecoder() {
-        return ReactiveJwtDecoders.fromOidcIssuerLocation(System.getenv("AUTH0_ISSUER_BASE_URL"));
+    public ReactiveJwtDecoder jwtDecoder(
+            @Value("${security.jwt-cache.max-size}") long cacheMaxSize,
+            @Value("${security.jwt-cache.max-ttl}") Duration cacheMaxTtl,
+            MeterRegistry meterRegistry
+    ) {
+        // OIDC discovery and the JWKS fetch happen on the first token rather than at startup, so the instance is
+        // ready without a round trip to Auth0; a failed lookup is retried by the next token
+        String issuer = System.getenv("AUTH0_ISSUER_BASE_URL");
+        NimbusReactiveJwtDecoder issuerDecoder = NimbusReactiveJwtDecoder.withIssuerLocation(issuer).build();
+        issuerDecoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(issuer));
+        return new CachingReactiveJwtDecoder(
+                issuerDecoder,
+                cacheMaxSize,
+                cacheMaxTtl,
+                meterRegistry
+        );
     }
 
     @Bean
@@ -0,0 +1,65 @@
+package com.orders.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "idempotency_keys")
+public class IdempotencyKey {
+
+    public static IdempotencyKey started(String id, String requestHash, String leaseId, Instant leaseExpiresAt) {
+        IdempotencyKey key = new IdempotencyKey();
+        key.setId(id);
+        key.setRequestHash(requestHash);
+        key.setLeaseId(leaseId);
+        key.setStatus(Status.IN_PROGRESS);
+        key.setCreatedAt(Instant.now());
+        key.setExpiresAt(leaseExpiresAt);
+        return key;
+    }
+
+    // "<auth0Id>:<Idempotency-Key header>", so one client's key can never replay another client's checkout;
+    // as _id it is unique, so only one attempt per key can be started
+    @Id
+    private String id;
+
+    // SHA-256 of the request the key was first used with; the same key with another request is rejected
+    @Field("requestHash")
+    private String requestHash;
+
+    // identifies the attempt holding the key; only that attempt may complete or release it
+    @Field("leaseId")
+    private String leaseId;
+
+    @Field("status")
+    private Status status;
+
+    // the stored CheckoutSessionRes of a COMPLETED attempt
+    @Field("sessionUrl")
+    private String sessionUrl;
+
+    @Field("createdAt")
+    private Instant createdAt;
+
+    // removed by Mongo once past: the lease of an IN_PROGRESS attempt, so a key whose attempt died with its
+    // instance frees up again, or the retention of a COMPLETED or FAILED one
+    @Indexed(name = "expiresAt_ttl", expireAfter = "0s")
+    @Field("expiresAt")
+    private Instant expiresAt;
+
+    // FAILED: the attempt failed after placing an order, so it cannot be safely run again under the same key
+    public enum Status {
+        IN_PROGRESS, COMPLETED, FAILED
+    }
+}
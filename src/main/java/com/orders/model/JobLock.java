@@ -0,0 +1,33 @@
+package com.orders.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+
+// held by the one instance running a cluster-wide job; as _id the job name is unique, so only one claim succeeds
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "job_locks")
+public class JobLock {
+
+    @Id
+    private String id;
+
+    // identifies the claim; only its holder may release it
+    @Field("leaseId")
+    private String leaseId;
+
+    // removed by Mongo once past, so a lock whose holder died frees up again
+    @Indexed(name = "expiresAt_ttl", expireAfter = "0s")
+    @Field("expiresAt")
+    private Instant expiresAt;
+}
@@ -6,17 +6,28 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
 
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "orders")
+// back both the createdAt-sorted list pages and their counts; _id keeps the sort stable
+@CompoundIndexes({
+        @CompoundIndex(name = "userId_createdAt", def = "{'userId': 1, 'createdAt': -1, '_id': -1}"),
+        @CompoundIndex(name = "restaurantId_createdAt", def = "{'restaurantId': 1, 'createdAt': -1, '_id': -1}"),
+        // finds the oldest archivable orders for OrderArchiver
+        @CompoundIndex(name = "Status_createdAt", def = "{'Status': 1, 'createdAt': 1}")
+})
 public class Order {
 
     @Id
@@ -46,7 +57,28 @@ public class Order {
     @Field("createdAt")
     private LocalDateTime createdAt = LocalDateTime.now();
 
+    // the last few status writes that moved this order, newest last; a write reads its id back to learn what it moved
+    @Indexed(name = "statusChangeIds", sparse = true)
+    @Field("statusChangeIds")
+    private List<String> statusChangeIds;
+
     public enum Status {
-        PLACED, PAID, IN_PROGRESS, OUT_FOR_DELIVERY, DELIVERED
+        PLACED, PAID, IN_PROGRESS, OUT_FOR_DELIVERY, DELIVERED;
+
+        // the states an order must currently be in to move to this one
+        public Set<Status> previous() {
+            return switch (this) {
+                case PLACED -> Set.of();
+                case PAID -> Set.of(PLACED);
+                case IN_PROGRESS -> Set.of(PAID);
+                case OUT_FOR_DELIVERY -> Set.of(PAID, IN_PROGRESS);
+                case DELIVERED -> Set.of(IN_PROGRESS, OUT_FOR_DELIVERY);
+            };
+        }
+
+        // PLACED and PAID are only ever set by checkout and the Stripe webhook
+        public boolean isSetByRestaurant() {
+            return this != PLACED && this != PAID;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.orders.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+// one rollup bucket: the orders of a restaurant created on one (UTC) day that are currently in one status.
+// Kept up to date by OrderStatsRecorder and recomputed from orders by OrderStatsRebuilder
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "order_stats")
+// the bucket key: incremental upserts and the rebuild's $merge both match on it, stats reads scan it by day
+@CompoundIndex(name = "restaurantId_day_status", def = "{'restaurantId': 1, 'day': 1, 'status': 1}", unique = true)
+public class OrderStats {
+
+    // the bucket day of an order, as the rebuild's $dateToString computes it from the stored createdAt
+    public static String day(LocalDateTime createdAt) {
+        return createdAt.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC).toLocalDate().toString();
+    }
+
+    public static String day(LocalDate date) {
+        return date.toString();
+    }
+
+    @Id
+    private ObjectId id;
+
+    @Field("restaurantId")
+    private String restaurantId;
+
+    // yyyy-MM-dd, so that string order is date order
+    @Field("day")
+    private String day;
+
+    @Field("status")
+    private Order.Status status;
+
+    @Field("orders")
+    private Long orders;
+
+    // sum of the cart item quantities
+    @Field("items")
+    private Long items;
+
+    // sum of totalAmount, which is only known once an order is paid
+    @Field("revenue")
+    private Long revenue;
+
+    // last incremental update or rebuild; a rebuild removes the buckets it did not produce or see updated
+    @Field("updatedAt")
+    private Date updatedAt;
+}
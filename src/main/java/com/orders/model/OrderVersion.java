@@ -0,0 +1,48 @@
+package com.orders.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+// a change counter for one customer's or one restaurant's orders, bumped by OrderVersions whenever one of them
+// is inserted, moved or removed; the order lists use it as their ETag
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "order_versions")
+public class OrderVersion {
+
+    // "<owner field>:<owner>", e.g. "userId:auth0|abc" or "restaurantId:65f1c2a9e4b0a1b2c3d4e5f6"
+    @Id
+    private String id;
+
+    // set once when the document is created, so a counter that is deleted and starts over at 0 never
+    // repeats an ETag a client may still hold
+    @Field("epoch")
+    private String epoch;
+
+    @Field("version")
+    private Long version;
+
+    // set, with a version bump, before the first of the owner's orders is copied to orders_archive; lists of
+    // owners without it never read the archive
+    @Field("archived")
+    private boolean archived;
+
+    // what a list reads for an owner none of whose orders has been written since versions were introduced;
+    // a real counter's epoch is an ObjectId, so its tags never equal these
+    public static OrderVersion unwritten(String id) {
+        return new OrderVersion(id, "0", 0L, false);
+    }
+
+    // weak: equal tags mean semantically equal pages, not byte-identical responses. representation tells apart
+    // the pages and views of the same list
+    public String eTag(String representation) {
+        return "W/\"" + this.epoch + "-" + this.version + "-" + representation + "\"";
+    }
+}
@@ -0,0 +1,71 @@
+package com.orders.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "stripe_events")
+@CompoundIndex(name = "status_nextAttemptAt", def = "{'status': 1, 'nextAttemptAt': 1}")
+public class StripeEvent {
+
+    public static StripeEvent received(String id, String type, String payload) {
+        StripeEvent event = new StripeEvent();
+        event.setId(id);
+        event.setType(type);
+        event.setPayload(payload);
+        event.setStatus(Status.PENDING);
+        event.setAttempts(0);
+        event.setNextAttemptAt(event.getReceivedAt());
+        return event;
+    }
+
+    // the Stripe event id; as _id it is unique, so a redelivered event cannot be stored twice
+    @Id
+    private String id;
+
+    @Field("type")
+    private String type;
+
+    // the verified webhook body, re-read when the event is applied
+    @Field("payload")
+    private String payload;
+
+    @Field("status")
+    private Status status;
+
+    @Field("attempts")
+    private Integer attempts;
+
+    // when a PENDING event becomes due, or when the lease of a PROCESSING one runs out
+    @Field("nextAttemptAt")
+    private LocalDateTime nextAttemptAt;
+
+    // set by each claim; only the attempt holding the current lease may record its outcome
+    @Field("leaseId")
+    private String leaseId;
+
+    @Field("lastError")
+    private String lastError;
+
+    @Field("receivedAt")
+    private LocalDateTime receivedAt = LocalDateTime.now();
+
+    @Field("processedAt")
+    private LocalDateTime processedAt;
+
+    // FAILED is the dead letter state: events there are never claimed again
+    public enum Status {
+        PENDING, PROCESSING, PROCESSED, FAILED
+    }
+}
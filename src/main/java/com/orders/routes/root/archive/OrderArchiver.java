@@ -0,0 +1,148 @@
+package com.orders.routes.root.archive;
+
+import com.orders.model.Order;
+import com.orders.versions.OrderVersions;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// moves archivable orders from orders to orders_archive in paced batches, each copied before it is removed
+@Slf4j
+@Component
+public class OrderArchiver {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final OrdersArchive ordersArchive;
+    private final OrderVersions orderVersions;
+    private final boolean enabled;
+    private final Duration interval;
+    private final int batchSize;
+    private final Duration pace;
+    private Disposable polling;
+
+    @Autowired
+    public OrderArchiver(
+            ReactiveMongoTemplate mongoTemplate,
+            OrdersArchive ordersArchive,
+            OrderVersions orderVersions,
+            @Value("${orders.archive.enabled}") boolean enabled,
+            @Value("${orders.archive.interval}") Duration interval,
+            @Value("${orders.archive.batch-size}") int batchSize,
+            @Value("${orders.archive.max-orders-per-second}") int maxOrdersPerSecond
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.ordersArchive = ordersArchive;
+        this.orderVersions = orderVersions;
+        this.enabled = enabled;
+        this.interval = interval;
+        this.batchSize = batchSize;
+        this.pace = Duration.ofMillis(1000L * batchSize / maxOrdersPerSecond);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // the archive is read with the same owner + createdAt queries as orders, so it gets the same indexes
+        Mono<Void> indexes = Flux.just("userId", "restaurantId")
+                .concatMap(owner -> this.mongoTemplate.indexOps(OrdersArchive.COLLECTION).ensureIndex(
+                        new CompoundIndexDefinition(new Document(owner, 1).append("createdAt", -1).append("_id", -1))
+                                .named(owner + "_createdAt")))
+                .then();
+        if (!this.enabled) {
+            this.polling = indexes.subscribe(null, e -> log.warn("Could not create the orders archive indexes", e));
+            return;
+        }
+        this.polling = indexes
+                .thenMany(Flux.interval(Duration.ZERO, this.interval))
+                .onBackpressureDrop()
+                .concatMap(tick -> this.archive()
+                        .doOnNext(archived -> {
+                            if (archived > 0) {
+                                log.info("Archived {} orders", archived);
+                            }
+                        })
+                        .onErrorResume(e -> {
+                            log.warn("Order archival failed", e);
+                            return Mono.just(0L);
+                        }), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (this.polling != null) {
+            this.polling.dispose();
+        }
+    }
+
+    // keeps taking batches until one comes back short, waiting pace between them; emits the number archived
+    public Mono<Long> archive() {
+        return this.archiveBatch()
+                .expand(archived -> archived == this.batchSize
+                        ? Mono.delay(this.pace).then(this.archiveBatch())
+                        : Mono.empty())
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> archiveBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(this.ordersArchive.archivable(now))
+                .with(Sort.by("createdAt"))
+                .limit(this.batchSize);
+        return this.mongoTemplate.find(query, Order.class)
+                .collectList()
+                .flatMap(orders -> orders.isEmpty()
+                        ? Mono.just(0L)
+                        : this.orderVersions.archiving(orders)
+                                .then(Mono.defer(() -> this.copy(orders)))
+                                .then(Mono.defer(() -> this.remove(orders.stream().map(Order::getId).toList(), now))));
+    }
+
+    private Mono<Void> copy(List<Order> orders) {
+        ReactiveBulkOperations bulkOps = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class, OrdersArchive.COLLECTION);
+        for (Order order : orders) {
+            bulkOps.replaceOne(Query.query(Criteria.where("_id").is(order.getId())), order, FindAndReplaceOptions.options().upsert());
+        }
+        return bulkOps.execute().then();
+    }
+
+    // only removes the orders that are still archivable; the copy of one that is not is dropped again
+    private Mono<Long> remove(List<ObjectId> ids, LocalDateTime now) {
+        Criteria archivable = this.ordersArchive.archivable(now);
+        return this.mongoTemplate.remove(Query.query(new Criteria().andOperator(Criteria.where("_id").in(ids), archivable)), Order.class)
+                .flatMap(result -> {
+                    if (result.getDeletedCount() == ids.size()) {
+                        return Mono.just(result.getDeletedCount());
+                    }
+                    Query changed = Query.query(new Criteria().andOperator(Criteria.where("_id").in(ids), new Criteria().norOperator(archivable)));
+                    changed.fields().include("_id");
+                    return this.mongoTemplate.find(changed, Order.class)
+                            .map(Order::getId)
+                            .collectList()
+                            .flatMap(stillHot -> stillHot.isEmpty()
+                                    ? Mono.empty()
+                                    : this.mongoTemplate.remove(Query.query(Criteria.where("_id").in(stillHot)), OrdersArchive.COLLECTION).then())
+                            .thenReturn(result.getDeletedCount());
+                });
+    }
+}
@@ -0,0 +1,58 @@
+package com.orders.routes.root.archive;
+
+import com.orders.model.Order;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+// the cold tier: orders_archive holds old DELIVERED orders, which can no longer change. Unpaid PLACED orders are
+// never archived, PlacedOrdersReaper deletes them
+@Component
+public class OrdersArchive {
+
+    public static final String COLLECTION = "orders_archive";
+
+    private final Duration deliveredAfter;
+
+    @Autowired
+    public OrdersArchive(@Value("${orders.archive.delivered-after}") Duration deliveredAfter) {
+        this.deliveredAfter = deliveredAfter;
+    }
+
+    // the hot orders that may move to the archive at now
+    public Criteria archivable(LocalDateTime now) {
+        return Criteria.where("Status").is(Order.Status.DELIVERED).and("createdAt").lt(now.minus(this.deliveredAfter));
+    }
+
+    // no archived order was created after this
+    public LocalDateTime boundary(LocalDateTime now) {
+        return now.minus(this.deliveredAfter);
+    }
+
+    // a full page of hot rows whose last row is newer than the boundary has no archived row in between
+    public <T> boolean covers(List<T> rows, int size, Function<T, LocalDateTime> createdAt) {
+        if (rows.size() < size) {
+            return false;
+        }
+        LocalDateTime last = createdAt.apply(rows.get(rows.size() - 1));
+        return last != null && last.isAfter(this.boundary(LocalDateTime.now()));
+    }
+
+    // both tiers newest first as one sequence; an order caught in both tiers is emitted once
+    public static <T> Flux<T> merge(Flux<T> hot, Flux<T> archived, Function<T, LocalDateTime> createdAt, Function<T, String> id) {
+        Comparator<T> newestFirst = Comparator.comparing(createdAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+                .thenComparing(id, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                .reversed();
+        return Flux.mergeComparing(newestFirst, hot, archived)
+                .distinctUntilChanged(id, Objects::equals);
+    }
+}
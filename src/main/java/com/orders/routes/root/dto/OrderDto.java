@@ -9,8 +9,6 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -21,28 +19,19 @@ import java.util.List;
 @AllArgsConstructor
 public class OrderDto {
 
-    public static Mono<OrderDto> fromOrder(Order order) {
+    public static OrderDto fromOrder(Order order) {
         OrderDto dto = new OrderDto();
         dto.setId(order.getId().toString());
         dto.setUserId(order.getUserId());
         dto.setRestaurantId(order.getRestaurantId());
         dto.setDeliveryDetails(order.getDeliveryDetails());
+        // the order was just read for this response and is not shared, so its items are used as they are
         dto.setCartItems(order.getCartItems());
         dto.setDeliveryPrice(order.getDeliveryPrice());
         dto.setTotalAmount(order.getTotalAmount());
         dto.setStatus(order.getStatus());
         dto.setCreatedAt(order.getCreatedAt());
-        return Flux.fromIterable(order.getCartItems())
-                .map(cartItem -> new CartItem(
-                        cartItem.getId(),
-                        cartItem.getQuantity(),
-                        cartItem.getName()
-                ))
-                .collectList()
-                .map(cartItems -> {
-                    dto.setCartItems(cartItems);
-                    return dto;
-                });
+        return dto;
     }
 
     private String id;
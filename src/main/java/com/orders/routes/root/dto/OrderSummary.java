@@ -0,0 +1,38 @@
+package com.orders.routes.root.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.orders.model.Order;
+import com.orders.utils.LocalDateTimeSerializer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+// list-view row read through a Mongo field projection: delivery details and cart items never leave the server
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummary {
+
+    @Id
+    private String id;
+
+    @Field("Status")
+    private Order.Status status;
+
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @Field("createdAt")
+    private LocalDateTime createdAt;
+
+    @Field("totalAmount")
+    private Long totalAmount;
+
+    // number of cart lines, computed by the projection
+    @Field("itemCount")
+    private Integer itemCount;
+};
@@ -4,28 +4,59 @@ import com.orders.model.Order;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.data.domain.PageRequest;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Getter
 @Setter
-public class OrdersGETReq {
+public class OrdersGETReq<T> {
 
-    public static Mono<OrdersGETReq> fromOrders(List<Order> orders, PageRequest pageRequest, Long count) {
-        OrdersGETReq dto = new OrdersGETReq();
+    public static OrdersGETReq<OrderDto> fromOrders(List<Order> orders, PageRequest pageRequest, Long count) {
+        OrdersGETReq<OrderDto> dto = new OrdersGETReq<>();
         dto.pagination = new Pagination(pageRequest, count);
-        return Flux.fromIterable(orders)
-                .flatMap(OrderDto::fromOrder)
-                .collectList()
-                .map(rows -> {
-                    dto.setRows(rows);
-                    return dto;
-                });
+        dto.rows = toRows(orders);
+        return dto;
     }
 
-    private List<OrderDto> rows;
+    // expects up to size + 1 orders; the extra one only signals that another page exists
+    public static OrdersGETReq<OrderDto> fromOrders(List<Order> orders, int size) {
+        boolean hasNext = orders.size() > size;
+        List<Order> page = hasNext ? orders.subList(0, size) : orders;
+        String next = hasNext ? PageCursor.fromOrder(page.get(page.size() - 1)).encode() : null;
+        OrdersGETReq<OrderDto> dto = new OrdersGETReq<>();
+        dto.pagination = new Pagination(size, next);
+        dto.rows = toRows(page);
+        return dto;
+    }
+
+    // keeps the createdAt order the rows were queried in
+    private static List<OrderDto> toRows(List<Order> orders) {
+        List<OrderDto> rows = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            rows.add(OrderDto.fromOrder(order));
+        }
+        return rows;
+    }
+
+    public static OrdersGETReq<OrderSummary> fromSummaries(List<OrderSummary> summaries, PageRequest pageRequest, Long count) {
+        OrdersGETReq<OrderSummary> dto = new OrdersGETReq<>();
+        dto.pagination = new Pagination(pageRequest, count);
+        dto.rows = summaries;
+        return dto;
+    }
+
+    public static OrdersGETReq<OrderSummary> fromSummaries(List<OrderSummary> summaries, int size) {
+        boolean hasNext = summaries.size() > size;
+        List<OrderSummary> page = hasNext ? summaries.subList(0, size) : summaries;
+        String next = hasNext ? PageCursor.fromSummary(page.get(page.size() - 1)).encode() : null;
+        OrdersGETReq<OrderSummary> dto = new OrdersGETReq<>();
+        dto.pagination = new Pagination(size, next);
+        dto.rows = page;
+        return dto;
+    }
+
+    private List<T> rows;
 
     private Pagination pagination;
 };
@@ -0,0 +1,29 @@
+package com.orders.routes.root.dto;
+
+import com.orders.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrdersStatusPATCHReq {
+
+    private List<Change> orders;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Change {
+
+        private String id;
+
+        private Order.Status status;
+    }
+};
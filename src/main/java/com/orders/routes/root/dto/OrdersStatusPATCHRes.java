@@ -0,0 +1,49 @@
+package com.orders.routes.root.dto;
+
+import com.orders.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// one result per requested change, in request order
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrdersStatusPATCHRes {
+
+    private List<Result> results;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class Result {
+
+        public Result(String id, Order.Status status) {
+            this.id = id;
+            this.status = status;
+        }
+
+        public void reject(Outcome outcome, String message) {
+            this.outcome = outcome;
+            this.message = message;
+        }
+
+        private String id;
+
+        // the requested status
+        private Order.Status status;
+
+        private Outcome outcome;
+
+        private String message;
+    }
+
+    // the per-order equivalents of the single PATCH's 204, 400, 404, 403 and 409
+    public enum Outcome {
+        UPDATED, INVALID, NOT_FOUND, FORBIDDEN, CONFLICT
+    }
+};
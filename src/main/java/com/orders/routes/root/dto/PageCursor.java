@@ -0,0 +1,50 @@
+package com.orders.routes.root.dto;
+
+import com.orders.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.bson.types.ObjectId;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+@Getter
+@AllArgsConstructor
+public class PageCursor {
+
+    private static final String SEPARATOR = "|";
+
+    public static PageCursor fromOrder(Order order) {
+        return new PageCursor(order.getCreatedAt(), order.getId());
+    }
+
+    public static PageCursor fromSummary(OrderSummary summary) {
+        return new PageCursor(summary.getCreatedAt(), new ObjectId(summary.getId()));
+    }
+
+    public static PageCursor decode(String value) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(SEPARATOR);
+            return new PageCursor(
+                    LocalDateTime.parse(decoded.substring(0, separator)),
+                    new ObjectId(decoded.substring(separator + 1))
+            );
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    // (createdAt, _id) of the last row served; the next page starts strictly after it
+    private LocalDateTime createdAt;
+
+    private ObjectId id;
+
+    public String encode() {
+        String raw = createdAt.toString() + SEPARATOR + id.toHexString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+};
@@ -22,6 +22,13 @@ public class Pagination {
         this.pageLimitReached = pageLimitReached;
     }
 
+    // cursor mode: no page numbers or totals, only the cursor of the next page (null on the last one)
+    public Pagination(Integer size, String next) {
+        this.size = size;
+        this.next = next;
+        this.pageLimitReached = next == null;
+    }
+
     private Integer page;
 
     private Integer size;
@@ -31,4 +38,6 @@ public class Pagination {
     private Long count;
 
     private Boolean pageLimitReached;
+
+    private String next;
 };
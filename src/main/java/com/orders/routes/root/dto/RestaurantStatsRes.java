@@ -0,0 +1,85 @@
+package com.orders.routes.root.dto;
+
+import com.orders.model.Order;
+import com.orders.model.OrderStats;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// a restaurant's order statistics over [from, to], summed from the order_stats rollups. Revenue and basket
+// size only count paid orders (anything past PLACED), so abandoned checkouts do not skew them
+@Getter
+@Setter
+public class RestaurantStatsRes {
+
+    public RestaurantStatsRes(String from, String to, List<OrderStats> buckets) {
+        this.from = from;
+        this.to = to;
+        this.totals = new Totals();
+        this.days = new ArrayList<>();
+        Totals day = null;
+        long items = 0;
+        for (OrderStats bucket : buckets) {
+            // buckets come sorted by day
+            if (day == null || !day.getDay().equals(bucket.getDay())) {
+                day = new Totals();
+                day.setDay(bucket.getDay());
+                this.days.add(day);
+            }
+            day.add(bucket);
+            this.totals.add(bucket);
+            if (bucket.getStatus() != Order.Status.PLACED) {
+                items += value(bucket.getItems());
+            }
+        }
+        long paid = this.totals.getPaidOrders();
+        this.averageOrderValue = paid == 0 ? 0 : (double) this.totals.getRevenue() / paid;
+        this.averageBasketSize = paid == 0 ? 0 : (double) items / paid;
+    }
+
+    private String from;
+
+    private String to;
+
+    private Totals totals;
+
+    // only the days that had orders
+    private List<Totals> days;
+
+    // in the smallest currency unit, like totalAmount
+    private Double averageOrderValue;
+
+    // cart item quantities per paid order
+    private Double averageBasketSize;
+
+    @Getter
+    @Setter
+    public static class Totals {
+
+        public void add(OrderStats bucket) {
+            long orders = value(bucket.getOrders());
+            this.ordersByStatus.merge(bucket.getStatus(), orders, Long::sum);
+            if (bucket.getStatus() != Order.Status.PLACED) {
+                this.paidOrders += orders;
+                this.revenue += value(bucket.getRevenue());
+            }
+        }
+
+        // null for the range totals
+        private String day;
+
+        private Map<Order.Status, Long> ordersByStatus = new EnumMap<>(Order.Status.class);
+
+        private long paidOrders;
+
+        private long revenue;
+    }
+
+    private static long value(Long value) {
+        return value == null ? 0 : value;
+    }
+};
@@ -0,0 +1,94 @@
+package com.orders.routes.root.export;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orders.model.CartItem;
+import com.orders.model.DeliveryDetails;
+import com.orders.model.Order;
+import com.orders.routes.root.dto.OrderDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+// turns a stream of orders into text chunks; rows are grouped so each write carries many of them,
+// and nothing is retained beyond the chunk being written
+@Component
+public class OrderExporter {
+
+    private static final int ROWS_PER_CHUNK = 256;
+
+    private static final String CSV_HEADER = "id,createdAt,status,userId,deliveryPrice,totalAmount,itemCount,items,"
+            + "customerName,email,addressLineOne,city\n";
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public OrderExporter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public Flux<String> ndjson(Flux<Order> orders) {
+        return chunk(orders.map(OrderDto::fromOrder).map(dto -> {
+            try {
+                return this.objectMapper.writeValueAsString(dto) + "\n";
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+    }
+
+    public Flux<String> csv(Flux<Order> orders) {
+        return chunk(orders.map(OrderExporter::csvRow)).startWith(CSV_HEADER);
+    }
+
+    private static Flux<String> chunk(Flux<String> rows) {
+        return rows.buffer(ROWS_PER_CHUNK).map(lines -> String.join("", lines));
+    }
+
+    private static String csvRow(Order order) {
+        DeliveryDetails details = order.getDeliveryDetails() != null ? order.getDeliveryDetails() : new DeliveryDetails();
+        List<CartItem> cartItems = order.getCartItems() != null ? order.getCartItems() : List.of();
+        StringBuilder items = new StringBuilder();
+        int itemCount = 0;
+        for (CartItem cartItem : cartItems) {
+            if (!items.isEmpty()) {
+                items.append("; ");
+            }
+            items.append(cartItem.getQuantity()).append(" x ").append(cartItem.getName());
+            itemCount += cartItem.getQuantity() != null ? cartItem.getQuantity() : 0;
+        }
+        return String.join(",",
+                csv(order.getId()),
+                csv(order.getCreatedAt() != null ? order.getCreatedAt().format(DateTimeFormatter.ISO_DATE_TIME) : null),
+                csv(order.getStatus()),
+                csv(order.getUserId()),
+                csv(order.getDeliveryPrice()),
+                csv(order.getTotalAmount()),
+                csv(itemCount),
+                csv(items),
+                csv(details.getName()),
+                csv(details.getEmail()),
+                csv(details.getAddressLineOne()),
+                csv(details.getCity())
+        ) + "\n";
+    }
+
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        // text a spreadsheet would run as a formula (a customer named "=HYPERLINK(...)") is prefixed with a quote,
+        // as OWASP recommends for CSV injection; numbers are written as they are
+        if (value instanceof CharSequence && !text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0) {
+            text = "'" + text;
+        }
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
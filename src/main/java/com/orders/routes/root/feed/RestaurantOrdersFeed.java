@@ -0,0 +1,144 @@
+package com.orders.routes.root.feed;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.orders.model.Order;
+import com.orders.routes.root.dto.OrderDto;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// one change stream on the orders collection per instance, fanned out to the restaurants that are listening and
+// closed while none are. Events carry no SSE id: nothing is replayed on reconnect, so a client that reconnects
+// reloads its order list
+@Slf4j
+@Component
+public class RestaurantOrdersFeed {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final Duration heartbeat;
+    private final int bufferSize;
+    private final Map<String, Listeners> listeners = new ConcurrentHashMap<>();
+    // last event seen by this instance; the shared cursor resumes from it after a failure
+    private volatile BsonValue resumeToken;
+    // emits nothing; every listener subscribes to it, so it runs while at least one does
+    private final Flux<ServerSentEvent<OrderDto>> changeStream;
+
+    @Autowired
+    public RestaurantOrdersFeed(
+            ReactiveMongoTemplate mongoTemplate,
+            @Value("${orders.feed.heartbeat}") Duration heartbeat,
+            @Value("${orders.feed.buffer-size}") int bufferSize
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.heartbeat = heartbeat;
+        this.bufferSize = bufferSize;
+        this.changeStream = Flux.defer(this::changes)
+                .concatMap(this::dispatch)
+                .doOnError(this::historyLost, e -> {
+                    // the oplog rolled past the last event seen: resuming from it can only fail again
+                    log.warn("Orders change stream history lost, restarting from now; events since the last one seen are not sent");
+                    this.resumeToken = null;
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Orders change stream failed, resuming", signal.failure())))
+                // nobody missed what happened while nobody listened, so a reopened stream starts from now
+                .doOnCancel(() -> this.resumeToken = null)
+                .thenMany(Flux.<ServerSentEvent<OrderDto>>empty())
+                .publish()
+                .refCount();
+    }
+
+    public Flux<ServerSentEvent<OrderDto>> subscribe(String restaurantId) {
+        return Flux.defer(() -> {
+            // attaching and detaching both go through compute, so a listener never attaches to a sink that the
+            // last listener leaving has just removed
+            Listeners listeners = this.listeners.compute(restaurantId, (id, current) -> {
+                Listeners attached = current == null ? new Listeners() : current;
+                attached.count++;
+                return attached;
+            });
+            // best effort: the sink never waits on a slow listener, each listener has its own bounded
+            // buffer instead and loses its oldest events once that fills up
+            Flux<ServerSentEvent<OrderDto>> events = listeners.sink.asFlux()
+                    .onBackpressureBuffer(this.bufferSize, dropped -> { }, BufferOverflowStrategy.DROP_OLDEST);
+            // a stalled client misses heartbeats rather than failing the stream with an overflow
+            Flux<ServerSentEvent<OrderDto>> heartbeats = Flux.interval(this.heartbeat)
+                    .onBackpressureDrop()
+                    .map(tick -> ServerSentEvent.<OrderDto>builder().comment("heartbeat").build());
+            return Flux.merge(events, heartbeats, this.changeStream)
+                    .doFinally(signal -> this.listeners.computeIfPresent(restaurantId,
+                            (id, current) -> --current.count == 0 ? null : current));
+        });
+    }
+
+    // ChangeStreamHistoryLost, or ChangeStreamFatalError which older servers report for the same, however
+    // Spring wrapped it
+    private boolean historyLost(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException mongoException) {
+                return mongoException.getCode() == 286 || mongoException.getCode() == 280;
+            }
+        }
+        return false;
+    }
+
+    private Flux<ChangeStreamEvent<Order>> changes() {
+        ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                .filter(Aggregation.newAggregation(Aggregation.match(
+                        Criteria.where("operationType").in("insert", "update", "replace"))));
+        if (this.resumeToken != null) {
+            options.resumeAfter(this.resumeToken);
+        }
+        return this.mongoTemplate.changeStream("orders", options.build(), Order.class);
+    }
+
+    private Mono<Void> dispatch(ChangeStreamEvent<Order> event) {
+        this.resumeToken = event.getResumeToken();
+        Order order = event.getBody();
+        if (order == null) {
+            return Mono.empty();
+        }
+        Listeners listeners = this.listeners.get(order.getRestaurantId());
+        if (listeners == null) {
+            return Mono.empty();
+        }
+        String name = "insert".equals(event.getRaw().getOperationTypeString()) ? "order-created" : "order-updated";
+        listeners.sink.tryEmitNext(ServerSentEvent.builder(OrderDto.fromOrder(order))
+                .event(name)
+                .build());
+        return Mono.empty();
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.listeners.values().forEach(listeners -> listeners.sink.tryEmitComplete());
+    }
+
+    // a restaurant's sink and how many listeners hold it; count only changes inside the map's compute
+    private static final class Listeners {
+
+        private final Sinks.Many<ServerSentEvent<OrderDto>> sink = Sinks.many().multicast().directBestEffort();
+        private int count;
+    }
+}
@@ -1,36 +1,101 @@
 package com.orders.routes.root.handlers;
 
+import com.orders.cache.OwnerRestaurantCache;
+import com.orders.client.RestaurantServiceClient;
 import com.orders.model.Order;
+import com.orders.model.OrderStats;
+import com.orders.routes.root.archive.OrdersArchive;
+import com.orders.routes.root.dto.OrderDto;
 import com.orders.routes.root.dto.OrderPATCHReq;
+import com.orders.routes.root.dto.OrderSummary;
 import com.orders.routes.root.dto.OrdersGETReq;
+import com.orders.routes.root.dto.OrdersStatusPATCHReq;
+import com.orders.routes.root.dto.OrdersStatusPATCHRes;
+import com.orders.routes.root.dto.PageCursor;
 import com.orders.routes.root.dto.Restaurant;
+import com.orders.routes.root.dto.RestaurantStatsRes;
+import com.orders.routes.root.export.OrderExporter;
+import com.orders.routes.root.feed.RestaurantOrdersFeed;
+import com.orders.routes.root.repository.OrderStatsRepository;
 import com.orders.routes.root.repository.OrdersRepository;
+import com.orders.routes.root.repository.StatusTransition;
 import com.orders.utils.BaseHandler;
+import com.orders.versions.OrderVersions;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Component
 public class OrdersRoutesHandler extends BaseHandler {
 
+    // upper bound on the changes of one bulk status update, which all go into a single bulkWrite
+    public static final int MAX_STATUS_CHANGES = 100;
+
+    // upper bound on the rows of one cursor page; offset pages keep accepting the sizes clients already send
+    public static final int MAX_PAGE_SIZE = 100;
+
+    // order lists may be kept by the browser but are revalidated with their ETag on every use
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     private OrdersRepository ordersRepository;
+    private OwnerRestaurantCache ownerRestaurantCache;
+    private RestaurantOrdersFeed restaurantOrdersFeed;
+    private OrderExporter orderExporter;
+    private RestaurantServiceClient restaurantServiceClient;
+    private OrderStatsRepository orderStatsRepository;
+    private OrdersArchive ordersArchive;
+    private OrderVersions orderVersions;
+    private int statsMaxDays;
 
     @Autowired
-    public OrdersRoutesHandler(OrdersRepository ordersRepository, ReactiveJwtDecoder jwtDecoder) {
+    public OrdersRoutesHandler(OrdersRepository ordersRepository, OwnerRestaurantCache ownerRestaurantCache, RestaurantOrdersFeed restaurantOrdersFeed, OrderExporter orderExporter, RestaurantServiceClient restaurantServiceClient, OrderStatsRepository orderStatsRepository, @Value("${order-stats.max-days}") int statsMaxDays, OrdersArchive ordersArchive, OrderVersions orderVersions, ReactiveJwtDecoder jwtDecoder) {
         this.ordersRepository = ordersRepository;
-        initializeBaseHandler(System.getenv("RESTAURANT_SVC_ADDRESS"), jwtDecoder);
+        this.ordersArchive = ordersArchive;
+        this.orderVersions = orderVersions;
+        this.orderStatsRepository = orderStatsRepository;
+        this.statsMaxDays = statsMaxDays;
+        this.ownerRestaurantCache = ownerRestaurantCache;
+        this.restaurantOrdersFeed = restaurantOrdersFeed;
+        this.orderExporter = orderExporter;
+        this.restaurantServiceClient = restaurantServiceClient;
+        initializeBaseHandler(jwtDecoder);
     }
 
     public OrdersRoutesHandler() {
@@ -38,75 +103,450 @@ public class OrdersRoutesHandler extends BaseHandler {
 
     public Mono<ServerResponse> getRestaurantOrders(ServerRequest req) {
         String authorizationHeader = req.headers().firstHeader("Authorization");
-        return this.getAuth0IdFromToken(authorizationHeader)
+        return this.getAuth0Id(req)
                 .flatMap(auth0Id -> {
                     // get the owner's restaurant
-                    return this.webClient.get()
-                            .uri("/cms" + "/" + auth0Id)
-                            .header("Authorization", authorizationHeader)
-                            .retrieve()
-                            .bodyToMono(Restaurant.class)
-                            .flatMap(restaurant -> {
-                                // paginated query for all orders where
-                                // fetched restaurant id matches
-                                PageRequest pageRequest = this.getPageRequest(req);
-                                Flux<Order> ordersFlux = ordersRepository.findAllByRestaurantId(restaurant.getId(), pageRequest);
-                                Mono<Long> count = ordersRepository.findAllByRestaurantId(restaurant.getId(), Pageable.unpaged()).count();
-                                return ordersFlux.collectList()
-                                        .zipWith(count, (list, cnt) -> OrdersGETReq.fromOrders(list, pageRequest, cnt))
-                                        .flatMap(dtoMono -> dtoMono)
-                                        .flatMap(dto -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(dto));
-                            });
+                    return this.getOwnerRestaurantId(auth0Id, authorizationHeader)
+                            // paginated query for all orders where
+                            // fetched restaurant id matches
+                            .flatMap(restaurantId -> this.getOrdersPage(
+                                    req,
+                                    (cursor, pageable) -> cursor == null
+                                            ? ordersRepository.findAllByRestaurantId(restaurantId, pageable)
+                                            : ordersRepository.findAllByRestaurantIdAfter(restaurantId, cursor.getCreatedAt(), cursor.getId(), pageable),
+                                    (cursor, pageable) -> cursor == null
+                                            ? ordersRepository.findSummariesByRestaurantId(restaurantId, pageable)
+                                            : ordersRepository.findSummariesByRestaurantIdAfter(restaurantId, cursor.getCreatedAt(), cursor.getId(), pageable),
+                                    () -> ordersRepository.countByRestaurantId(restaurantId),
+                                    "restaurantId",
+                                    restaurantId
+                            ));
                 });
     }
 
-    public Mono<ServerResponse> getUserOrders(ServerRequest req) {
+    // server-sent events for every order created or updated at the owner's restaurant
+    public Mono<ServerResponse> getRestaurantOrdersStream(ServerRequest req) {
         String authorizationHeader = req.headers().firstHeader("Authorization");
-        return this.getAuth0IdFromToken(authorizationHeader)
-                .flatMap(auth0Id -> {
-                    PageRequest pageRequest = this.getPageRequest(req);
-                    Flux<Order> ordersFlux = ordersRepository.findAllByUserId(auth0Id, pageRequest);
-                    Mono<Long> count = ordersRepository.findAllByUserId(auth0Id, Pageable.unpaged()).count();
-                    return ordersFlux.collectList()
-                            .zipWith(count, (list, cnt) -> OrdersGETReq.fromOrders(list, pageRequest, cnt))
-                            .flatMap(dtoMono -> dtoMono)
-                            .flatMap(dto -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(dto));
+        return this.getAuth0Id(req)
+                .flatMap(auth0Id -> this.getOwnerRestaurantId(auth0Id, authorizationHeader))
+                .flatMap(restaurantId -> ServerResponse.ok()
+                        .contentType(MediaType.TEXT_EVENT_STREAM)
+                        .body(BodyInserters.fromServerSentEvents(this.restaurantOrdersFeed.subscribe(restaurantId))));
+    }
+
+    // the owner's full order history in [from, to), streamed as NDJSON (default) or CSV
+    public Mono<ServerResponse> exportRestaurantOrders(ServerRequest req) {
+        String authorizationHeader = req.headers().firstHeader("Authorization");
+        String format = req.queryParam("format").orElse("ndjson");
+        if (!format.equals("ndjson") && !format.equals("csv")) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported format"));
+        }
+        LocalDateTime from = this.getExportBound(req, "from", LocalDateTime.of(1970, 1, 1, 0, 0));
+        LocalDateTime to = this.getExportBound(req, "to", LocalDateTime.of(9999, 1, 1, 0, 0));
+        return this.getAuth0Id(req)
+                .flatMap(auth0Id -> this.getOwnerRestaurantId(auth0Id, authorizationHeader))
+                .flatMap(restaurantId -> {
+                    // both tiers are read oldest first, so the merge stays a lazy stream; an order caught between its
+                    // copy to the archive and its removal from orders is in both, next to itself, and exported once
+                    Flux<Order> orders = Flux.mergeComparing(
+                                    Comparator.comparing(Order::getCreatedAt).thenComparing(Order::getId),
+                                    ordersRepository.streamAllByRestaurantId(restaurantId, from, to),
+                                    ordersRepository.streamArchivedByRestaurantId(restaurantId, from, to))
+                            .distinctUntilChanged(Order::getId);
+                    boolean csv = format.equals("csv");
+                    return ServerResponse.ok()
+                            .contentType(csv ? new MediaType("text", "csv") : MediaType.APPLICATION_NDJSON)
+                            .header("Content-Disposition", "attachment; filename=\"orders-" + restaurantId + "." + format + "\"")
+                            .body(csv ? this.orderExporter.csv(orders) : this.orderExporter.ndjson(orders), String.class);
                 });
     }
 
+    // the owner's order statistics for the (UTC) days in [from, to], by default the last 30; read from the
+    // order_stats rollups, so the cost grows with the number of days rather than the number of orders
+    public Mono<ServerResponse> getRestaurantStats(ServerRequest req) {
+        String authorizationHeader = req.headers().firstHeader("Authorization");
+        LocalDate to = this.getStatsDay(req, "to", LocalDate.now(ZoneOffset.UTC));
+        LocalDate from = this.getStatsDay(req, "from", to.minusDays(29));
+        if (from.isAfter(to) || ChronoUnit.DAYS.between(from, to) >= this.statsMaxDays) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "from must not be after to, and at most " + this.statsMaxDays + " days apart"));
+        }
+        String fromDay = OrderStats.day(from);
+        String toDay = OrderStats.day(to);
+        return this.getAuth0Id(req)
+                .flatMap(auth0Id -> this.getOwnerRestaurantId(auth0Id, authorizationHeader))
+                .flatMap(restaurantId -> this.orderStatsRepository.findAllByRestaurantIdAndDays(restaurantId, fromDay, toDay)
+                        .collectList())
+                .map(buckets -> new RestaurantStatsRes(fromDay, toDay, buckets))
+                .flatMap(res -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(res));
+    }
+
+    private LocalDate getStatsDay(ServerRequest req, String name, LocalDate defaultValue) {
+        Optional<String> value = req.queryParam(name);
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return LocalDate.parse(value.get());
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + name);
+        }
+    }
+
+    // accepts a date (2024-01-31) or a date-time (2024-01-31T12:00:00)
+    private LocalDateTime getExportBound(ServerRequest req, String name, LocalDateTime defaultValue) {
+        Optional<String> value = req.queryParam(name);
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return value.get().contains("T") ? LocalDateTime.parse(value.get()) : LocalDate.parse(value.get()).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + name);
+        }
+    }
+
+    public Mono<ServerResponse> getUserOrders(ServerRequest req) {
+        return this.getAuth0Id(req)
+                .flatMap(auth0Id -> this.getOrdersPage(
+                        req,
+                        (cursor, pageable) -> cursor == null
+                                ? ordersRepository.findAllByUserId(auth0Id, pageable)
+                                : ordersRepository.findAllByUserIdAfter(auth0Id, cursor.getCreatedAt(), cursor.getId(), pageable),
+                        (cursor, pageable) -> cursor == null
+                                ? ordersRepository.findSummariesByUserId(auth0Id, pageable)
+                                : ordersRepository.findSummariesByUserIdAfter(auth0Id, cursor.getCreatedAt(), cursor.getId(), pageable),
+                        () -> ordersRepository.countByUserId(auth0Id),
+                        "userId",
+                        auth0Id
+                ));
+    }
+
+    // a single order with everything the list views leave out; visible to its customer and its restaurant
+    public Mono<ServerResponse> getOrder(ServerRequest req) {
+        String id = req.pathVariable("id");
+        String authorizationHeader = req.headers().firstHeader("Authorization");
+        return this.getAuth0Id(req)
+                .flatMap(auth0Id -> ordersRepository.findById(id)
+                        .switchIfEmpty(Mono.defer(() -> ordersRepository.findArchivedById(id)))
+                        .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Order not found")))
+                        .flatMap(order -> {
+                            if (auth0Id.equals(order.getUserId())) {
+                                return Mono.just(order);
+                            }
+                            return this.getOwnerRestaurantId(auth0Id, authorizationHeader)
+                                    .filter(restaurantId -> restaurantId.equals(order.getRestaurantId()))
+                                    .map(restaurantId -> order)
+                                    .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty())
+                                    .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Credentials mismatch")));
+                        }))
+                .map(OrderDto::fromOrder)
+                .flatMap(dto -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(dto));
+    }
+
     public Mono<ServerResponse> patchOrderStatus(ServerRequest req) {
         String id = req.pathVariable("id");
         String authorizationHeader = req.headers().firstHeader("Authorization");
-        return ordersRepository.findById(id)
-                .flatMap(order -> this.getAuth0IdFromToken(authorizationHeader)
-                        // find the user's restaurant, to which the order being updated must belong
-                        .flatMap(decodedAuth0Id -> this.webClient.get()
-                                .uri("/cms" + "/" + decodedAuth0Id)
-                                .header("Authorization", authorizationHeader)
-                                .retrieve()
-                                .bodyToMono(Restaurant.class)
-                                .flatMap(restaurant -> {
-                                    // 403 if the order does not belong to the restaurant
-                                    if (!restaurant.getId().equals(order.getRestaurantId())) {
-                                        return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Credentials mismatch"));
+        return this.getAuth0Id(req)
+                // find the user's restaurant, to which the order being updated must belong
+                .flatMap(decodedAuth0Id -> this.getOwnerRestaurantId(decodedAuth0Id, authorizationHeader)
+                        .flatMap(restaurantId -> req.bodyToMono(OrderPATCHReq.class)
+                                .flatMap(body -> {
+                                    Order.Status status = body.getStatus();
+                                    if (status == null || !status.isSetByRestaurant()) {
+                                        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid status"));
+                                    }
+                                    // ownership and the allowed previous states are part of the update's filter,
+                                    // so concurrent updates cannot overwrite each other
+                                    return this.ordersRepository.transitionStatus(id, restaurantId, status)
+                                            .flatMap(previous -> ServerResponse.status(HttpStatus.NO_CONTENT).build())
+                                            .switchIfEmpty(Mono.defer(() -> this.rejectTransition(id, restaurantId, decodedAuth0Id, status)));
+                                })));
+    }
+
+    // only runs when the conditional update matched nothing, to tell the caller why
+    private Mono<ServerResponse> rejectTransition(String id, String restaurantId, String auth0Id, Order.Status status) {
+        return this.ordersRepository.findById(id)
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Order not found")))
+                .flatMap(order -> {
+                    // 403 if the order does not belong to the restaurant
+                    if (!restaurantId.equals(order.getRestaurantId())) {
+                        // the cached mapping may be stale; resolve it again on the next request
+                        this.ownerRestaurantCache.invalidate(auth0Id);
+                        return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Credentials mismatch"));
+                    }
+                    return Mono.error(new ResponseStatusException(HttpStatus.CONFLICT,
+                            "Cannot move order from " + order.getStatus() + " to " + status));
+                });
+    }
+
+    // moves many orders of the user's restaurant at once: the restaurant is resolved once, ownership and current
+    // statuses are read with one query and every legal change is applied with one bulkWrite. Each change gets
+    // its own outcome, so one bad id does not fail the rest
+    public Mono<ServerResponse> patchOrderStatuses(ServerRequest req) {
+        String authorizationHeader = req.headers().firstHeader("Authorization");
+        return this.getAuth0Id(req)
+                .flatMap(decodedAuth0Id -> this.getOwnerRestaurantId(decodedAuth0Id, authorizationHeader)
+                        .flatMap(restaurantId -> req.bodyToMono(OrdersStatusPATCHReq.class)
+                                .flatMap(body -> {
+                                    List<OrdersStatusPATCHReq.Change> changes = body.getOrders();
+                                    if (changes == null || changes.isEmpty() || changes.size() > MAX_STATUS_CHANGES) {
+                                        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                                "Between 1 and " + MAX_STATUS_CHANGES + " orders are required"));
+                                    }
+                                    return this.applyStatusChanges(changes, restaurantId, decodedAuth0Id);
+                                })))
+                .flatMap(res -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(res));
+    }
+
+    private Mono<OrdersStatusPATCHRes> applyStatusChanges(List<OrdersStatusPATCHReq.Change> changes, String restaurantId, String auth0Id) {
+        List<OrdersStatusPATCHRes.Result> results = new ArrayList<>(changes.size());
+        Map<ObjectId, OrdersStatusPATCHRes.Result> pending = new LinkedHashMap<>();
+        for (OrdersStatusPATCHReq.Change change : changes) {
+            OrdersStatusPATCHRes.Result result = new OrdersStatusPATCHRes.Result(change.getId(), change.getStatus());
+            results.add(result);
+            if (change.getId() == null || !ObjectId.isValid(change.getId())) {
+                result.reject(OrdersStatusPATCHRes.Outcome.INVALID, "Invalid id");
+            } else if (change.getStatus() == null || !change.getStatus().isSetByRestaurant()) {
+                result.reject(OrdersStatusPATCHRes.Outcome.INVALID, "Invalid status");
+            } else if (pending.putIfAbsent(new ObjectId(change.getId()), result) != null) {
+                result.reject(OrdersStatusPATCHRes.Outcome.INVALID, "Duplicate id");
+            }
+        }
+        if (pending.isEmpty()) {
+            return Mono.just(new OrdersStatusPATCHRes(results));
+        }
+        return this.ordersRepository.findStatusesByIdIn(pending.keySet())
+                .collectMap(Order::getId)
+                .flatMap(orders -> {
+                    List<StatusTransition> transitions = new ArrayList<>(pending.size());
+                    boolean mismatch = false;
+                    for (Map.Entry<ObjectId, OrdersStatusPATCHRes.Result> entry : pending.entrySet()) {
+                        Order order = orders.get(entry.getKey());
+                        OrdersStatusPATCHRes.Result result = entry.getValue();
+                        if (order == null) {
+                            result.reject(OrdersStatusPATCHRes.Outcome.NOT_FOUND, "Order not found");
+                        } else if (!restaurantId.equals(order.getRestaurantId())) {
+                            result.reject(OrdersStatusPATCHRes.Outcome.FORBIDDEN, "Credentials mismatch");
+                            mismatch = true;
+                        } else if (!result.getStatus().previous().contains(order.getStatus())) {
+                            result.reject(OrdersStatusPATCHRes.Outcome.CONFLICT,
+                                    "Cannot move order from " + order.getStatus() + " to " + result.getStatus());
+                        } else {
+                            transitions.add(new StatusTransition(order, result.getStatus()));
+                        }
+                    }
+                    if (mismatch) {
+                        // the cached mapping may be stale; resolve it again on the next request
+                        this.ownerRestaurantCache.invalidate(auth0Id);
+                    }
+                    if (transitions.isEmpty()) {
+                        return Mono.just(new OrdersStatusPATCHRes(results));
+                    }
+                    // each update is filtered on the status read above, so a concurrent change makes it match nothing
+                    return this.ordersRepository.transitionStatuses(restaurantId, transitions)
+                            .map(applied -> {
+                                for (StatusTransition transition : applied) {
+                                    pending.get(transition.getId()).setOutcome(OrdersStatusPATCHRes.Outcome.UPDATED);
+                                }
+                                for (StatusTransition transition : transitions) {
+                                    OrdersStatusPATCHRes.Result result = pending.get(transition.getId());
+                                    if (result.getOutcome() == null) {
+                                        result.reject(OrdersStatusPATCHRes.Outcome.CONFLICT, "Order was changed concurrently");
                                     }
-                                    return req.bodyToMono(OrderPATCHReq.class)
-                                            .flatMap(body -> {
-                                                order.setStatus(body.getStatus());
-                                                return this.ordersRepository.save(order)
-                                                        .flatMap(res -> ServerResponse.status(HttpStatus.NO_CONTENT).build());
-                                            });
-                                }))
-                )
-                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Restaurant not found")));
+                                }
+                                return new OrdersStatusPATCHRes(results);
+                            });
+                });
+    }
+
+    private Mono<String> getOwnerRestaurantId(String auth0Id, String authorizationHeader) {
+        return this.ownerRestaurantCache.get(auth0Id, () -> this.restaurantServiceClient
+                .getOwnerRestaurant(auth0Id, authorizationHeader)
+                .map(Restaurant::getId));
     }
 
     private PageRequest getPageRequest(ServerRequest req) {
         Sort sort = Sort.by(Sort.Direction.DESC, "createdAt");
-        Map<String, String> queryParams = req.queryParams().toSingleValueMap();
-        int page = Integer.parseInt(queryParams.getOrDefault("page", "1"));
-        page = page - 1;
-        int size = Integer.parseInt(queryParams.getOrDefault("size", "5"));
-        return PageRequest.of(page, size, sort);
+        int page;
+        try {
+            page = Integer.parseInt(req.queryParam("page").orElse("1"));
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page");
+        }
+        int size = this.getPageSize(req, Integer.MAX_VALUE);
+        // a page that reaches into the archive reads up to page * size rows, which must fit the int skips
+        if (page < 1 || (long) page * size > Integer.MAX_VALUE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page");
+        }
+        return PageRequest.of(page - 1, size, sort);
+    }
+
+    private int getPageSize(ServerRequest req, int max) {
+        int size;
+        try {
+            size = Integer.parseInt(req.queryParam("size").orElse("5"));
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid size");
+        }
+        if (size < 1 || size > max) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be between 1 and " + max);
+        }
+        return size;
+    }
+
+    // cursor mode is opt-in: any request carrying "after" (empty for the first page)
+    private boolean isCursorRequest(ServerRequest req) {
+        return req.queryParam("after").isPresent();
+    }
+
+    // tags every page with the owner's (ownerField = owner) order version: a client revalidating with the ETag it
+    // was given gets a 304 after one lookup, without the page query or count, until one of the owner's orders changes
+    private Mono<ServerResponse> getOrdersPage(
+            ServerRequest req,
+            BiFunction<PageCursor, Pageable, Flux<Order>> ordersQuery,
+            BiFunction<PageCursor, Pageable, Flux<OrderSummary>> summariesQuery,
+            Supplier<Mono<Long>> count,
+            String ownerField,
+            String owner
+    ) {
+        String representation = representation(req);
+        // read before the page, so the tag is never newer than the rows it is sent with
+        return this.orderVersions.current(ownerField, owner)
+                .flatMap(version -> isNotModified(req, version.eTag(representation))
+                        ? ServerResponse.status(HttpStatus.NOT_MODIFIED).eTag(version.eTag(representation)).cacheControl(REVALIDATE).build()
+                        : this.ordersPage(req, ordersQuery, summariesQuery, count, ownerField, owner, version.isArchived())
+                                .flatMap(body -> ServerResponse.ok()
+                                        .eTag(version.eTag(representation))
+                                        .cacheControl(REVALIDATE)
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .bodyValue(body)));
+    }
+
+    // short digest of the query parameters that pick the page and view, folded into its ETag
+    private static String representation(ServerRequest req) {
+        String query = String.join("&",
+                "view=" + req.queryParam("view").orElse(""),
+                req.queryParam("after").map(after -> "after=" + after).orElse("page=" + req.queryParam("page").orElse("")),
+                "size=" + req.queryParam("size").orElse(""));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // If-None-Match compares weakly, and * matches any version
+    private static boolean isNotModified(ServerRequest req, String eTag) {
+        String opaqueTag = opaqueTag(eTag);
+        for (String header : req.headers().header(HttpHeaders.IF_NONE_MATCH)) {
+            for (String tag : header.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.equals("*") || opaqueTag(trimmed).equals(opaqueTag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    // serves both pagination modes (offset, or cursor when "after" is present) in either view:
+    // full documents by default, or projected OrderSummary rows with view=summary. Owners with archived orders
+    // (ownerField = owner) get pages that continue into the archive
+    private Mono<? extends OrdersGETReq<?>> ordersPage(
+            ServerRequest req,
+            BiFunction<PageCursor, Pageable, Flux<Order>> ordersQuery,
+            BiFunction<PageCursor, Pageable, Flux<OrderSummary>> summariesQuery,
+            Supplier<Mono<Long>> count,
+            String ownerField,
+            String owner,
+            boolean archived
+    ) {
+        ArchivedQuery<Order> archivedOrders = (cursor, skip, limit) -> this.ordersRepository.findArchivedOrders(ownerField, owner, cursor, skip, limit);
+        ArchivedQuery<OrderSummary> archivedSummaries = (cursor, skip, limit) -> this.ordersRepository.findArchivedSummaries(ownerField, owner, cursor, skip, limit);
+        Function<Order, String> orderId = order -> order.getId().toHexString();
+        boolean summaries = req.queryParam("view").map("summary"::equals).orElse(false);
+        if (this.isCursorRequest(req)) {
+            int size = this.getPageSize(req, MAX_PAGE_SIZE);
+            String after = req.queryParam("after").orElse("");
+            PageCursor cursor = after.isEmpty() ? null : PageCursor.decode(after);
+            // fetch one extra row to learn whether a next page exists, without counting
+            Pageable pageable = PageRequest.of(0, size + 1, Sort.by(Sort.Direction.DESC, "createdAt", "id"));
+            return summaries
+                    ? this.cursorPage(cursor, pageable, archived, summariesQuery, archivedSummaries, OrderSummary::getCreatedAt, OrderSummary::getId)
+                            .map(rows -> OrdersGETReq.fromSummaries(rows, size))
+                    : this.cursorPage(cursor, pageable, archived, ordersQuery, archivedOrders, Order::getCreatedAt, orderId)
+                            .map(rows -> OrdersGETReq.fromOrders(rows, size));
+        }
+        PageRequest pageRequest = this.getPageRequest(req);
+        // counted once per request: for the total, and to skip into the archive
+        Mono<Long> hotCount = Mono.defer(count).cache();
+        Mono<Long> total = archived
+                ? hotCount.zipWith(Mono.defer(() -> this.ordersRepository.countArchived(ownerField, owner)), Long::sum)
+                : hotCount;
+        return summaries
+                ? this.offsetPage(pageRequest, archived, hotCount, summariesQuery, archivedSummaries, OrderSummary::getId)
+                        .zipWith(total, (rows, cnt) -> OrdersGETReq.fromSummaries(rows, pageRequest, cnt))
+                : this.offsetPage(pageRequest, archived, hotCount, ordersQuery, archivedOrders, orderId)
+                        .zipWith(total, (rows, cnt) -> OrdersGETReq.fromOrders(rows, pageRequest, cnt));
+    }
+
+    // both tiers merged in (createdAt, _id) order; the archive is only read when the hot rows do not cover the page
+    private <T> Mono<List<T>> cursorPage(
+            PageCursor cursor,
+            Pageable pageable,
+            boolean archived,
+            BiFunction<PageCursor, Pageable, Flux<T>> hotQuery,
+            ArchivedQuery<T> archivedQuery,
+            Function<T, LocalDateTime> createdAt,
+            Function<T, String> id
+    ) {
+        return hotQuery.apply(cursor, pageable).collectList().flatMap(rows ->
+                !archived || this.ordersArchive.covers(rows, pageable.getPageSize(), createdAt)
+                        ? Mono.just(rows)
+                        : OrdersArchive.merge(Flux.fromIterable(rows), archivedQuery.find(cursor, 0, pageable.getPageSize()), createdAt, id)
+                                .take(pageable.getPageSize())
+                                .collectList());
+    }
+
+    // the hot tier, then the archive: only the page where the hot rows run out reads the archive, from skip - hotCount
+    private <T> Mono<List<T>> offsetPage(
+            PageRequest pageRequest,
+            boolean archived,
+            Mono<Long> hotCount,
+            BiFunction<PageCursor, Pageable, Flux<T>> hotQuery,
+            ArchivedQuery<T> archivedQuery,
+            Function<T, String> id
+    ) {
+        int size = pageRequest.getPageSize();
+        return hotQuery.apply(null, pageRequest).collectList().flatMap(rows -> {
+            if (!archived || rows.size() == size) {
+                return Mono.just(rows);
+            }
+            Mono<Integer> archivedSkip = rows.isEmpty()
+                    ? hotCount.map(hot -> (int) Math.max(0, pageRequest.getOffset() - hot))
+                    : Mono.just(0);
+            Set<String> hotIds = rows.stream().map(id).collect(Collectors.toSet());
+            return archivedSkip.flatMapMany(skip -> archivedQuery.find(null, skip, size - rows.size()))
+                    .filter(row -> !hotIds.contains(id.apply(row)))
+                    .collectList()
+                    .map(archivedRows -> {
+                        List<T> page = new ArrayList<>(rows);
+                        page.addAll(archivedRows);
+                        return page;
+                    });
+        });
+    }
+
+    // the archived rows of a list, strictly after cursor, from the skip-th on
+    @FunctionalInterface
+    private interface ArchivedQuery<T> {
+
+        Flux<T> find(PageCursor cursor, int skip, int limit);
     }
 }
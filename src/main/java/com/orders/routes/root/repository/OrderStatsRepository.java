@@ -0,0 +1,16 @@
+package com.orders.routes.root.repository;
+
+import com.orders.model.OrderStats;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface OrderStatsRepository extends ReactiveMongoRepository<OrderStats, ObjectId> {
+
+    // the restaurant's buckets for days in [from, to], at most one per day and status
+    @Query(value = "{ 'restaurantId': ?0, 'day': { '$gte': ?1, '$lte': ?2 } }", sort = "{ 'day': 1 }")
+    Flux<OrderStats> findAllByRestaurantIdAndDays(String restaurantId, String from, String to);
+}
@@ -1,13 +1,49 @@
 package com.orders.routes.root.repository;
 
 import com.orders.model.Order;
+import com.orders.routes.root.dto.OrderSummary;
+import org.bson.types.ObjectId;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Meta;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
 
 @Repository
-public interface OrdersRepository extends ReactiveMongoRepository<Order, String> {
+public interface OrdersRepository extends ReactiveMongoRepository<Order, String>, OrdersRepositoryCustom {
     Flux<Order> findAllByUserId(String userId, Pageable pageable);
     Flux<Order> findAllByRestaurantId(String restaurantId, Pageable pageable);
+    Mono<Long> countByUserId(String userId);
+    Mono<Long> countByRestaurantId(String restaurantId);
+
+    // keyset pages: rows strictly after (createdAt, _id) in createdAt DESC, _id DESC order
+    @Query("{ 'userId': ?0, '$or': [ { 'createdAt': { '$lt': ?1 } }, { 'createdAt': ?1, '_id': { '$lt': ?2 } } ] }")
+    Flux<Order> findAllByUserIdAfter(String userId, LocalDateTime createdAt, ObjectId id, Pageable pageable);
+    @Query("{ 'restaurantId': ?0, '$or': [ { 'createdAt': { '$lt': ?1 } }, { 'createdAt': ?1, '_id': { '$lt': ?2 } } ] }")
+    Flux<Order> findAllByRestaurantIdAfter(String restaurantId, LocalDateTime createdAt, ObjectId id, Pageable pageable);
+
+    String SUMMARY_FIELDS = "{ 'Status': 1, 'createdAt': 1, 'totalAmount': 1, 'itemCount': { '$size': { '$ifNull': [ '$cartItems', [] ] } } }";
+    @Query(value = "{ 'userId': ?0 }", fields = SUMMARY_FIELDS)
+    Flux<OrderSummary> findSummariesByUserId(String userId, Pageable pageable);
+    @Query(value = "{ 'restaurantId': ?0 }", fields = SUMMARY_FIELDS)
+    Flux<OrderSummary> findSummariesByRestaurantId(String restaurantId, Pageable pageable);
+    @Query(value = "{ 'userId': ?0, '$or': [ { 'createdAt': { '$lt': ?1 } }, { 'createdAt': ?1, '_id': { '$lt': ?2 } } ] }", fields = SUMMARY_FIELDS)
+    Flux<OrderSummary> findSummariesByUserIdAfter(String userId, LocalDateTime createdAt, ObjectId id, Pageable pageable);
+    @Query(value = "{ 'restaurantId': ?0, '$or': [ { 'createdAt': { '$lt': ?1 } }, { 'createdAt': ?1, '_id': { '$lt': ?2 } } ] }", fields = SUMMARY_FIELDS)
+    Flux<OrderSummary> findSummariesByRestaurantIdAfter(String restaurantId, LocalDateTime createdAt, ObjectId id, Pageable pageable);
+
+    // just enough of each order to check ownership and status before a bulk status change, and to move it
+    // between stats rollups and bump its customer's order version afterwards
+    @Query(value = "{ '_id': { '$in': ?0 } }", fields = "{ 'userId': 1, 'restaurantId': 1, 'Status': 1, 'createdAt': 1, 'totalAmount': 1, 'cartItems.quantity': 1 }")
+    Flux<Order> findStatusesByIdIn(Collection<ObjectId> ids);
+
+    // full history in [from, to), read lazily from the cursor as the consumer requests more
+    @Meta(cursorBatchSize = 500)
+    @Query(value = "{ 'restaurantId': ?0, 'createdAt': { '$gte': ?1, '$lt': ?2 } }", sort = "{ 'createdAt': 1, '_id': 1 }")
+    Flux<Order> streamAllByRestaurantId(String restaurantId, LocalDateTime from, LocalDateTime to);
 }
@@ -0,0 +1,33 @@
+package com.orders.routes.root.repository;
+
+import com.orders.model.Order;
+import com.orders.routes.root.dto.OrderSummary;
+import com.orders.routes.root.dto.PageCursor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface OrdersRepositoryCustom {
+    // moves the restaurant's order to status in one round trip, only from a state allowed by
+    // Order.Status#previous; emits the order as it was before the update, or nothing if no order matched
+    Mono<Order> transitionStatus(String id, String restaurantId, Order.Status status);
+
+    // applies all transitions with one unordered bulkWrite; each update only matches while the order still
+    // belongs to the restaurant and is still in its from status. Emits the transitions that were applied
+    Mono<List<StatusTransition>> transitionStatuses(String restaurantId, List<StatusTransition> transitions);
+
+    // the archive tier (orders_archive) of the list queries above: ownerField is userId or restaurantId, rows
+    // come newest first, strictly after cursor when there is one, from the skip-th on
+    Flux<Order> findArchivedOrders(String ownerField, String owner, PageCursor cursor, int skip, int limit);
+
+    Flux<OrderSummary> findArchivedSummaries(String ownerField, String owner, PageCursor cursor, int skip, int limit);
+
+    Mono<Long> countArchived(String ownerField, String owner);
+
+    Mono<Order> findArchivedById(String id);
+
+    // archived history in [from, to), oldest first like streamAllByRestaurantId
+    Flux<Order> streamArchivedByRestaurantId(String restaurantId, LocalDateTime from, LocalDateTime to);
+}
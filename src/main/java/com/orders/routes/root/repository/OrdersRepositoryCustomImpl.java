@@ -0,0 +1,152 @@
+package com.orders.routes.root.repository;
+
+import com.orders.model.Order;
+import com.orders.routes.root.archive.OrdersArchive;
+import com.orders.routes.root.dto.OrderSummary;
+import com.orders.routes.root.dto.PageCursor;
+import com.orders.stats.OrderStatsRecorder;
+import com.orders.versions.OrderVersions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+public class OrdersRepositoryCustomImpl implements OrdersRepositoryCustom {
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "createdAt", "_id");
+    // how many status changes an order remembers in Order.statusChangeIds
+    private static final int STATUS_CHANGE_IDS = 8;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final OrderStatsRecorder orderStatsRecorder;
+    private final OrderVersions orderVersions;
+
+    @Autowired
+    public OrdersRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate, OrderStatsRecorder orderStatsRecorder, OrderVersions orderVersions) {
+        this.mongoTemplate = mongoTemplate;
+        this.orderStatsRecorder = orderStatsRecorder;
+        this.orderVersions = orderVersions;
+    }
+
+    @Override
+    public Mono<Order> transitionStatus(String id, String restaurantId, Order.Status status) {
+        if (!ObjectId.isValid(id)) {
+            return Mono.empty();
+        }
+        Query query = Query.query(Criteria.where("_id").is(new ObjectId(id))
+                .and("restaurantId").is(restaurantId)
+                .and("Status").in(status.previous()));
+        Update update = statusChange(status, UUID.randomUUID().toString());
+        return this.mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(false), Order.class)
+                .flatMap(previous -> Mono.when(
+                                this.orderStatsRecorder.moved(previous, status, previous.getTotalAmount()),
+                                this.orderVersions.changed(previous))
+                        .thenReturn(previous));
+    }
+
+    @Override
+    public Mono<List<StatusTransition>> transitionStatuses(String restaurantId, List<StatusTransition> transitions) {
+        // tags every order this write moves, so that after a partial write its own moves can be told apart
+        // from the same move made by a concurrent identical request
+        String statusChangeId = UUID.randomUUID().toString();
+        ReactiveBulkOperations bulkOps = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class);
+        for (StatusTransition transition : transitions) {
+            Query query = Query.query(Criteria.where("_id").is(transition.getId())
+                    .and("restaurantId").is(restaurantId)
+                    .and("Status").is(transition.getFrom()));
+            bulkOps.updateOne(query, statusChange(transition.getTo(), statusChangeId));
+        }
+        return bulkOps.execute()
+                .flatMap(result -> result.getModifiedCount() == transitions.size()
+                        ? Mono.just(transitions)
+                        : this.findApplied(transitions, statusChangeId))
+                .flatMap(applied -> Mono.when(
+                                this.orderStatsRecorder.moved(applied),
+                                this.orderVersions.changed(applied.stream().map(StatusTransition::getOrder).toList()))
+                        .thenReturn(applied));
+    }
+
+    private static Update statusChange(Order.Status status, String statusChangeId) {
+        Update update = new Update().set("Status", status);
+        update.push("statusChangeIds").slice(-STATUS_CHANGE_IDS).each(statusChangeId);
+        return update;
+    }
+
+    // a bulkWrite only reports how many updates matched, so when some did not, the orders are read again: the
+    // ones carrying this write's statusChangeId were moved by it. An order in its target status without the id
+    // was moved by someone else, who records that move
+    Mono<List<StatusTransition>> findApplied(List<StatusTransition> transitions, String statusChangeId) {
+        Query query = Query.query(Criteria.where("_id").in(transitions.stream().map(StatusTransition::getId).toList())
+                .and("statusChangeIds").is(statusChangeId));
+        query.fields().include("_id");
+        return this.mongoTemplate.find(query, Order.class)
+                .map(Order::getId)
+                .collect(Collectors.toSet())
+                .map(moved -> transitions.stream()
+                        .filter(transition -> moved.contains(transition.getId()))
+                        .toList());
+    }
+
+    @Override
+    public Flux<Order> findArchivedOrders(String ownerField, String owner, PageCursor cursor, int skip, int limit) {
+        Query query = Query.query(archivedPage(ownerField, owner, cursor)).with(NEWEST_FIRST).skip(skip).limit(limit);
+        return this.mongoTemplate.find(query, Order.class, OrdersArchive.COLLECTION);
+    }
+
+    @Override
+    public Flux<OrderSummary> findArchivedSummaries(String ownerField, String owner, PageCursor cursor, int skip, int limit) {
+        Query query = new BasicQuery(new Document(), Document.parse(OrdersRepository.SUMMARY_FIELDS))
+                .addCriteria(archivedPage(ownerField, owner, cursor))
+                .with(NEWEST_FIRST)
+                .skip(skip)
+                .limit(limit);
+        return this.mongoTemplate.find(query, OrderSummary.class, OrdersArchive.COLLECTION);
+    }
+
+    @Override
+    public Mono<Long> countArchived(String ownerField, String owner) {
+        return this.mongoTemplate.count(Query.query(Criteria.where(ownerField).is(owner)), OrdersArchive.COLLECTION);
+    }
+
+    @Override
+    public Mono<Order> findArchivedById(String id) {
+        if (!ObjectId.isValid(id)) {
+            return Mono.empty();
+        }
+        return this.mongoTemplate.findById(new ObjectId(id), Order.class, OrdersArchive.COLLECTION);
+    }
+
+    @Override
+    public Flux<Order> streamArchivedByRestaurantId(String restaurantId, LocalDateTime from, LocalDateTime to) {
+        Query query = Query.query(Criteria.where("restaurantId").is(restaurantId).and("createdAt").gte(from).lt(to))
+                .with(Sort.by("createdAt", "_id"))
+                .cursorBatchSize(500);
+        return this.mongoTemplate.find(query, Order.class, OrdersArchive.COLLECTION);
+    }
+
+    // the owner's rows strictly after (createdAt, _id) in createdAt DESC, _id DESC order, like the *After queries
+    private static Criteria archivedPage(String ownerField, String owner, PageCursor cursor) {
+        Criteria criteria = Criteria.where(ownerField).is(owner);
+        if (cursor == null) {
+            return criteria;
+        }
+        return criteria.orOperator(
+                Criteria.where("createdAt").lt(cursor.getCreatedAt()),
+                Criteria.where("createdAt").is(cursor.getCreatedAt()).and("_id").lt(cursor.getId()));
+    }
+}
@@ -0,0 +1,25 @@
+package com.orders.routes.root.repository;
+
+import com.orders.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.bson.types.ObjectId;
+
+// an order of the restaurant to move from the status it was read with to a new one; the order as read is
+// also the pre-image the stats rollups are updated from
+@Getter
+@AllArgsConstructor
+public class StatusTransition {
+
+    private final Order order;
+
+    private final Order.Status to;
+
+    public ObjectId getId() {
+        return this.order.getId();
+    }
+
+    public Order.Status getFrom() {
+        return this.order.getStatus();
+    }
+}
@@ -1,8 +1,11 @@
 package com.orders.routes.root.router;
 
+import com.orders.admission.AdmissionControl;
 import com.orders.routes.root.handlers.OrdersRoutesHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
 import org.springframework.web.reactive.function.server.RequestPredicates;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.RouterFunctions;
@@ -12,13 +15,37 @@ import org.springframework.web.reactive.function.server.ServerResponse;
 public class OrdersRouter {
 
     @Bean
-    public RouterFunction<ServerResponse> orderRouterRoutes(OrdersRoutesHandler ordersRoutesHandler) {
+    public RouterFunction<ServerResponse> orderRouterRoutes(
+            OrdersRoutesHandler ordersRoutesHandler,
+            AdmissionControl admissionControl,
+            @Value("${admission.limits.user-orders}") String userOrdersLimit,
+            @Value("${admission.limits.restaurant-orders}") String restaurantOrdersLimit,
+            @Value("${admission.limits.restaurant-stream}") String restaurantStreamLimit,
+            @Value("${admission.limits.restaurant-export}") String restaurantExportLimit,
+            @Value("${admission.limits.restaurant-stats}") String restaurantStatsLimit,
+            @Value("${admission.limits.order-status}") String orderStatusLimit,
+            @Value("${admission.limits.order}") String orderLimit
+    ) {
+        HandlerFilterFunction<ServerResponse, ServerResponse> userOrders = admissionControl.limit("user-orders", userOrdersLimit);
+        HandlerFilterFunction<ServerResponse, ServerResponse> restaurantOrders = admissionControl.limit("restaurant-orders", restaurantOrdersLimit);
+        HandlerFilterFunction<ServerResponse, ServerResponse> restaurantStream = admissionControl.limit("restaurant-stream", restaurantStreamLimit);
+        HandlerFilterFunction<ServerResponse, ServerResponse> restaurantExport = admissionControl.limit("restaurant-export", restaurantExportLimit);
+        HandlerFilterFunction<ServerResponse, ServerResponse> restaurantStats = admissionControl.limit("restaurant-stats", restaurantStatsLimit);
+        // single and bulk status updates draw from the same allowance
+        HandlerFilterFunction<ServerResponse, ServerResponse> orderStatus = admissionControl.limit("order-status", orderStatusLimit);
+        HandlerFilterFunction<ServerResponse, ServerResponse> order = admissionControl.limit("order", orderLimit);
         return RouterFunctions
                 .route()
                 .nest(RequestPredicates.path("/api/orders"), builder -> {
-                    builder.GET("/user", ordersRoutesHandler::getUserOrders);
-                    builder.GET("/get-restaurant-orders", ordersRoutesHandler::getRestaurantOrders);
-                    builder.PATCH("/{id}/status", ordersRoutesHandler::patchOrderStatus);
+                    builder.GET("/user", userOrders.apply(ordersRoutesHandler::getUserOrders));
+                    builder.GET("/get-restaurant-orders", restaurantOrders.apply(ordersRoutesHandler::getRestaurantOrders));
+                    builder.GET("/restaurant-stream", restaurantStream.apply(ordersRoutesHandler::getRestaurantOrdersStream));
+                    builder.GET("/restaurant-export", restaurantExport.apply(ordersRoutesHandler::exportRestaurantOrders));
+                    builder.GET("/restaurant-stats", restaurantStats.apply(ordersRoutesHandler::getRestaurantStats));
+                    builder.PATCH("/status", orderStatus.apply(ordersRoutesHandler::patchOrderStatuses));
+                    builder.PATCH("/{id}/status", orderStatus.apply(ordersRoutesHandler::patchOrderStatus));
+                    // keep last so it does not shadow the fixed GET paths above
+                    builder.GET("/{id}", order.apply(ordersRoutesHandler::getOrder));
                 })
                 .build();
     }
@@ -0,0 +1,65 @@
+package com.orders.routes.stripe.dto;
+
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData;
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData.ProductData;
+import com.stripe.param.checkout.SessionCreateParams.ShippingOption;
+import com.stripe.param.checkout.SessionCreateParams.ShippingOption.ShippingRateData;
+import com.stripe.param.checkout.SessionCreateParams.ShippingOption.ShippingRateData.FixedAmount;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// everything a checkout needs from one version of a restaurant's menu; the Stripe params are immutable, so
+// they are built once per cached menu and shared by every checkout, which only adds quantities
+@Getter
+public class RestaurantMenu {
+
+    public RestaurantMenu(Restaurant restaurant) {
+        this.restaurantId = restaurant.getId();
+        this.deliveryPrice = restaurant.getDeliveryPrice();
+        this.lineItemPrices = restaurant.getMenuItems().stream()
+                .collect(Collectors.toUnmodifiableMap(MenuItem::getId, RestaurantMenu::priceData));
+        this.shippingOption = shippingOption(restaurant.getDeliveryPrice());
+    }
+
+    private final String restaurantId;
+
+    private final Long deliveryPrice;
+
+    // price index used to validate cart items, keyed by menu item id
+    private final Map<String, PriceData> lineItemPrices;
+
+    private final ShippingOption shippingOption;
+
+    private static PriceData priceData(MenuItem menuItem) {
+        ProductData productData = ProductData
+                .builder()
+                .setName(menuItem.getName())
+                .build();
+        return PriceData
+                .builder()
+                .setCurrency("usd")
+                .setUnitAmount(menuItem.getPrice())
+                .setProductData(productData)
+                .build();
+    }
+
+    private static ShippingOption shippingOption(Long deliveryPrice) {
+        FixedAmount fixedAmount = FixedAmount
+                .builder()
+                .setAmount(deliveryPrice)
+                .setCurrency("usd")
+                .build();
+        ShippingRateData shippingRateData = ShippingRateData
+                .builder()
+                .setDisplayName("Delivery")
+                .setType(ShippingRateData.Type.FIXED_AMOUNT)
+                .setFixedAmount(fixedAmount)
+                .build();
+        return ShippingOption
+                .builder()
+                .setShippingRateData(shippingRateData)
+                .build();
+    }
+};
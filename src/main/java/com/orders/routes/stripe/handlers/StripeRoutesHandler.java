@@ -1,215 +1,234 @@
 package com.orders.routes.stripe.handlers;
 
+import com.orders.cache.RestaurantMenuCache;
+import com.orders.client.RestaurantServiceException;
 import com.orders.routes.stripe.dto.CheckoutSessionReq;
 import com.orders.routes.stripe.dto.CheckoutSessionRes;
-import com.orders.routes.stripe.dto.MenuItem;
-import com.orders.routes.stripe.dto.Restaurant;
+import com.orders.routes.stripe.dto.RestaurantMenu;
+import com.orders.routes.stripe.idempotency.CheckoutIdempotency;
 import com.orders.model.CartItem;
 import com.orders.model.Order;
+import com.orders.model.StripeEvent;
+import com.orders.routes.stripe.repository.StripeEventsRepository;
 import com.orders.routes.stripe.repository.StripeOrdersRepository;
 import com.orders.utils.BaseHandler;
+import com.orders.utils.MonoTimer;
+import com.orders.utils.StripeBulkhead;
 import com.orders.utils.ValidationHandler;
 import com.stripe.StripeClient;
+import io.micrometer.core.instrument.MeterRegistry;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Event;
-import com.stripe.model.EventDataObjectDeserializer;
-import com.stripe.model.StripeObject;
 import com.stripe.model.checkout.Session;
 import com.stripe.net.RequestOptions;
 import com.stripe.param.checkout.SessionCreateParams;
 import com.stripe.param.checkout.SessionCreateParams.LineItem;
 import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData;
-import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData.ProductData;
-import com.stripe.param.checkout.SessionCreateParams.ShippingOption.ShippingRateData;
 import com.stripe.param.checkout.SessionCreateParams.ShippingOption;
-import com.stripe.param.checkout.SessionCreateParams.ShippingOption.ShippingRateData.FixedAmount;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.springframework.web.server.ResponseStatusException;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import com.stripe.net.Webhook;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Component
 public class StripeRoutesHandler extends BaseHandler {
 
+    // event types tagged by name on stripe.webhook.events; anything else is counted as "other"
+    private static final Set<String> TRACKED_EVENT_TYPES = Set.of(
+            "checkout.session.completed",
+            "checkout.session.expired",
+            "checkout.session.async_payment_succeeded",
+            "checkout.session.async_payment_failed"
+    );
+
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final RequestOptions SESSION_REQUEST_OPTIONS = RequestOptions.builder()
+            .setConnectTimeout(30 * 1000)
+            .setReadTimeout(80 * 1000)
+            .build();
+
     private StripeOrdersRepository stripeOrdersRepository;
+    private StripeEventsRepository stripeEventsRepository;
+    private RestaurantMenuCache restaurantMenuCache;
     private StripeClient stripe;
+    private StripeBulkhead stripeBulkhead;
     private ValidationHandler validationHandler;
+    private MeterRegistry meterRegistry;
+    private CheckoutIdempotency checkoutIdempotency;
 
     @Autowired
-    public StripeRoutesHandler(StripeOrdersRepository stripeOrdersRepository, ValidationHandler validationHandler, ReactiveJwtDecoder jwtDecoder) {
+    public StripeRoutesHandler(StripeOrdersRepository stripeOrdersRepository, StripeEventsRepository stripeEventsRepository, RestaurantMenuCache restaurantMenuCache, StripeBulkhead stripeBulkhead, ValidationHandler validationHandler, CheckoutIdempotency checkoutIdempotency, MeterRegistry meterRegistry, ReactiveJwtDecoder jwtDecoder) {
         this.stripeOrdersRepository = stripeOrdersRepository;
-        this.stripe = new StripeClient(System.getenv("STRIPE_SK_TEST_KEY"));
+        this.stripeEventsRepository = stripeEventsRepository;
+        this.restaurantMenuCache = restaurantMenuCache;
+        this.stripe = stripeClient(System.getenv("STRIPE_SK_TEST_KEY"), System.getenv("STRIPE_API_BASE"));
+        this.stripeBulkhead = stripeBulkhead;
         this.validationHandler = validationHandler;
-        initializeBaseHandler(System.getenv("RESTAURANT_SVC_ADDRESS") + "/customer", jwtDecoder);
+        this.checkoutIdempotency = checkoutIdempotency;
+        this.meterRegistry = meterRegistry;
+        initializeBaseHandler(jwtDecoder);
     }
 
     public StripeRoutesHandler() {
     }
 
+    // STRIPE_API_BASE points the client at a stand-in for the Stripe API, e.g. the load-test harness's stub;
+    // unset, it talks to Stripe
+    private static StripeClient stripeClient(String apiKey, String apiBase) {
+        if (apiBase == null || apiBase.isBlank()) {
+            return new StripeClient(apiKey);
+        }
+        return StripeClient.builder()
+                .setApiKey(apiKey)
+                .setApiBase(apiBase)
+                .build();
+    }
+
     public Mono<ServerResponse> stripeCheckoutWebhook(ServerRequest req) {
         return req.bodyToMono(String.class)
                 .flatMap(payload -> {
                     String stripeSignature = req.headers().firstHeader("stripe-signature");
-                    Mono<Event> monoEvent = Mono.fromCallable(() -> {
+                    Mono<Event> monoEvent = this.stripeBulkhead.call(() -> {
                         return Webhook.constructEvent(
                                 payload,
                                 stripeSignature,
                                 System.getenv("STRIPE_ENDPOINT_SECRET")
                         );
-                    }).flatMap(Mono::just);
+                    });
+                    // verified events are only recorded here and acknowledged right away;
+                    // StripeEventsWorker applies them in the background
                     return monoEvent
-                            .flatMap(event -> {
-                                EventDataObjectDeserializer eventDataObjectDeserializer = event.getDataObjectDeserializer();
-                                StripeObject stripeObject = null;
-                                if (eventDataObjectDeserializer.getObject().isPresent()) {
-                                    stripeObject = eventDataObjectDeserializer.getObject().get();
-                                } else {
-                                    return Mono.error(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "eventDataObjectDeserializer was null"));
-                                }
-                                if (event.getType().equals("checkout.session.completed")) {
-                                    String orderId = ((Session) stripeObject).getMetadata().get("orderId");
-                                    Long totalAmount = ((Session) stripeObject).getAmountTotal();
-                                    return this.stripeOrdersRepository.findById(orderId)
-                                            .flatMap(order -> {
-                                                order.setStatus(Order.Status.PAID);
-                                                order.setTotalAmount(totalAmount);
-                                                return this.stripeOrdersRepository.save(order)
-                                                        .flatMap(savedOrder -> ServerResponse.status(HttpStatus.OK).build());
-                                            });
-                                }
-                                return ServerResponse.status(HttpStatus.OK).build();
-                            });
+                            .doOnError(StripeException.class, e -> this.countWebhookEvent("unknown", "rejected"))
+                            .flatMap(event -> this.stripeEventsRepository
+                                    .insert(StripeEvent.received(event.getId(), event.getType(), payload))
+                                    .doOnSuccess(inserted -> this.countWebhookEvent(event.getType(), "recorded"))
+                                    .then(ServerResponse.status(HttpStatus.OK).build())
+                                    // a redelivery of an event that is already in the inbox
+                                    .onErrorResume(DuplicateKeyException.class, e -> {
+                                        this.countWebhookEvent(event.getType(), "duplicate");
+                                        return ServerResponse.status(HttpStatus.OK).build();
+                                    }));
                 })
                 .onErrorMap(StripeException.class, e -> {
                     return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Stripe API Error" + e.getMessage());
                 });
     }
 
-    public Mono<List<SessionCreateParams.LineItem>> createLineItems(Mono<Restaurant> restaurantMono, List<CartItem> cartItems) {
-        return restaurantMono
-                .flatMap(restaurant -> {
-                    Map<String, MenuItem> menuItems = restaurant.getMenuItems().stream()
-                            .collect(Collectors.toMap(MenuItem::getId, menuItem -> menuItem));
-                    return Flux.fromIterable(cartItems)
-                            .flatMap(cartItem -> {
-                                MenuItem menuItem = menuItems.get(cartItem.getId());
-                                // each cartItem must match an object in the fetched restaurant's menuItem list
-                                // for the sake of validating prices
-                                // if an item does not match, throw error (or return Mono.error?)
-                                // when an item is matched, assign the matched item to menuItem
-                                if (menuItem == null) {
-                                    return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Restaurant not found"));
-                                } else {
-                                    return Mono.just(createLineItem(menuItem, cartItem.getQuantity()));
-                                }
-                            })
-                            .collectList();
-                });
-    }
-
-    private SessionCreateParams.LineItem createLineItem(MenuItem menuItem, Integer quantity) {
-        ProductData productData = ProductData
-                .builder()
-                .setName(menuItem.getName())
-                .build();
-        PriceData priceData = LineItem
-                .PriceData
-                .builder()
-                .setCurrency("usd")
-                .setUnitAmount(menuItem.getPrice())
-                .setProductData(productData)
-                .build();
-        return LineItem
-                .builder()
-                .setPriceData(priceData)
-                .setQuantity((long) quantity)
-                .build();
+    // one pass over the cart: every item must be on the restaurant's current menu, which fixes its price,
+    // and be ordered at least once
+    public List<LineItem> createLineItems(RestaurantMenu restaurantMenu, List<CartItem> cartItems) {
+        Map<String, PriceData> lineItemPrices = restaurantMenu.getLineItemPrices();
+        List<LineItem> lineItems = new ArrayList<>(cartItems.size());
+        for (CartItem cartItem : cartItems) {
+            PriceData priceData = lineItemPrices.get(cartItem.getId());
+            Integer quantity = cartItem.getQuantity();
+            if (priceData == null || quantity == null || quantity < 1) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cart item");
+            }
+            lineItems.add(LineItem
+                    .builder()
+                    .setPriceData(priceData)
+                    .setQuantity((long) quantity)
+                    .build());
+        }
+        return lineItems;
     }
 
     public Mono<ServerResponse> createCheckoutSession(ServerRequest req) {
-        String authorizationHeader = req.headers().firstHeader("Authorization");
+        String idempotencyKey = req.headers().firstHeader(IDEMPOTENCY_KEY_HEADER);
         return req.bodyToMono(CheckoutSessionReq.class)
                 .flatMap(checkoutSessionReq -> {
                     this.validationHandler.validate(checkoutSessionReq, "checkoutSessionReq");
-                    Mono<Restaurant> restaurant = this.webClient.get()
-                            .uri("/" + checkoutSessionReq.getRestaurantSlug())
-                            .retrieve()
-                            .bodyToMono(Restaurant.class)
-                            .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Restaurant not found")));
-                    List<CartItem> cartItems = checkoutSessionReq.getCartItems();
-                    Mono<List<SessionCreateParams.LineItem>> lineItems = createLineItems(restaurant, cartItems);
-                    return this.getAuth0IdFromToken(authorizationHeader)
-                            .flatMap(auth0Id -> {
-                                return restaurant
-                                        .flatMap(restaurantFlat -> {
-                                            ObjectId orderId = new ObjectId();
-                                            Order order = new Order();
-                                            order.setId(orderId);
-                                            order.setRestaurantId(restaurantFlat.getId());
-                                            order.setStatus(Order.Status.PLACED);
-                                            order.setDeliveryDetails(checkoutSessionReq.getDeliveryDetails());
-                                            order.setCartItems(cartItems);
-                                            order.setDeliveryPrice(restaurantFlat.getDeliveryPrice());
-                                            order.setUserId(auth0Id);
-                                            return stripeOrdersRepository.save(order)
-                                                    .flatMap(orderFlat -> {
-                                                        return this.createSession(
-                                                                        lineItems,
-                                                                        orderFlat.getId(),
-                                                                        restaurantFlat.getDeliveryPrice(),
-                                                                        restaurantFlat.getId()
-                                                                )
-                                                                .flatMap(session -> {
-                                                                    CheckoutSessionRes res = new CheckoutSessionRes(session.getUrl());
-                                                                    return ServerResponse
-                                                                            .status(HttpStatus.CREATED)
-                                                                            .contentType(MediaType.APPLICATION_JSON)
-                                                                            .bodyValue(res);
-                                                                });
-                                                    });
-                                        });
-                            });
-                });
+                    return this.getAuth0Id(req)
+                            .flatMap(auth0Id -> idempotencyKey == null
+                                    ? this.checkout(checkoutSessionReq, auth0Id, () -> {})
+                                    // a retry with the same key gets the first attempt's session instead of a new order
+                                    : this.checkoutIdempotency.execute(auth0Id, idempotencyKey, checkoutSessionReq, placing -> this.checkout(checkoutSessionReq, auth0Id, placing)))
+                            .flatMap(res -> ServerResponse
+                                    .status(HttpStatus.CREATED)
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .bodyValue(res));
+                })
+                .doOnError(e -> this.meterRegistry.counter("checkout.failures", "cause", checkoutFailureCause(e)).increment());
+    }
+
+    private Mono<CheckoutSessionRes> checkout(CheckoutSessionReq checkoutSessionReq, String auth0Id, Runnable placing) {
+        List<CartItem> cartItems = checkoutSessionReq.getCartItems();
+        // resolved once per checkout and shared with other checkouts of the same restaurant
+        return this.restaurantMenuCache.get(checkoutSessionReq.getRestaurantSlug())
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Restaurant not found")))
+                .flatMap(restaurantFlat -> Mono.fromCallable(() -> createLineItems(restaurantFlat, cartItems))
+                        .flatMap(lineItems -> {
+                            ObjectId orderId = new ObjectId();
+                            Order order = new Order();
+                            order.setId(orderId);
+                            order.setRestaurantId(restaurantFlat.getRestaurantId());
+                            order.setStatus(Order.Status.PLACED);
+                            order.setDeliveryDetails(checkoutSessionReq.getDeliveryDetails());
+                            order.setCartItems(cartItems);
+                            order.setDeliveryPrice(restaurantFlat.getDeliveryPrice());
+                            order.setUserId(auth0Id);
+                            return Mono.fromRunnable(placing)
+                                    .then(Mono.defer(() -> stripeOrdersRepository.place(order)))
+                                    .flatMap(orderFlat -> this.createSession(
+                                            lineItems,
+                                            orderFlat.getId(),
+                                            restaurantFlat.getShippingOption(),
+                                            restaurantFlat.getRestaurantId()
+                                    ))
+                                    .map(session -> new CheckoutSessionRes(session.getUrl()));
+                        }));
+    }
+
+    private void countWebhookEvent(String type, String outcome) {
+        String typeTag = TRACKED_EVENT_TYPES.contains(type) ? type : "other";
+        this.meterRegistry.counter("stripe.webhook.events", "type", typeTag, "outcome", outcome).increment();
+    }
+
+    private static String checkoutFailureCause(Throwable e) {
+        if (e.getCause() instanceof StripeException) {
+            return "stripe_error";
+        }
+        if (e instanceof WebClientResponseException || e instanceof RestaurantServiceException) {
+            return "restaurant_service";
+        }
+        if (e instanceof ResponseStatusException ex) {
+            switch (ex.getStatusCode().value()) {
+                case 400:
+                    return "invalid_request";
+                case 404:
+                    return "restaurant_not_found";
+                case 409:
+                case 422:
+                    return "idempotency_conflict";
+                case 503:
+                    return "stripe_busy";
+                default:
+                    break;
+            }
+        }
+        return "internal";
     }
 
     private Mono<Session> createSession(
-            Mono<List<SessionCreateParams.LineItem>> lineItems,
+            List<SessionCreateParams.LineItem> lineItems,
             ObjectId orderId,
-            Long deliveryPrice,
+            ShippingOption shippingOption,
             String restaurantId
     ) {
-        return lineItems.flatMap(lineItemsFlat -> {
-                    RequestOptions options = RequestOptions.builder()
-                            .setConnectTimeout(30 * 1000)
-                            .setReadTimeout(80 * 1000)
-                            .build();
-                    FixedAmount fixedAmount =
-                            FixedAmount.builder()
-                                    .setAmount((long) deliveryPrice)
-                                    .setCurrency("usd").build();
-                    ShippingRateData shippingRateData = SessionCreateParams
-                            .ShippingOption
-                            .ShippingRateData
-                            .builder()
-                            .setDisplayName("Delivery")
-                            .setType(ShippingRateData.Type.FIXED_AMOUNT)
-                            .setFixedAmount(fixedAmount)
-                            .build();
-                    ShippingOption shippingOption = ShippingOption
-                            .builder()
-                            .setShippingRateData(shippingRateData)
-                            .build();
+        return Mono.defer(() -> {
                     SessionCreateParams params = SessionCreateParams.builder()
                             .setSuccessUrl(System.getenv("CLIENT_SVC_ADDRESS") + "/order-status?success=true")
                             .setCancelUrl(System.getenv("CLIENT_SVC_ADDRESS") + "/detail?canceled=true")
@@ -217,12 +236,14 @@ public class StripeRoutesHandler extends BaseHandler {
                             .addShippingOption(shippingOption)
                             .putMetadata("orderId", orderId.toString())
                             .putMetadata("restaurantId", restaurantId)
-                            .addAllLineItem(lineItemsFlat)
+                            .addAllLineItem(lineItems)
                             .build();
-                    return Mono.fromCallable(() -> this.stripe
-                                    .checkout()
-                                    .sessions()
-                                    .create(params, options))
+                    Mono<Session> createCall = this.stripeBulkhead.call(() -> this.stripe
+                            .checkout()
+                            .sessions()
+                            .create(params, SESSION_REQUEST_OPTIONS));
+                    // includes time spent waiting for a bulkhead slot
+                    return MonoTimer.time(createCall, this.meterRegistry, "stripe.requests", "operation", "checkout.sessions.create")
                             .flatMap(session -> {
                                 if (session.getSuccessUrl().isBlank()) {
                                     return Mono.error(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Success URL is blank"));
@@ -231,7 +252,7 @@ public class StripeRoutesHandler extends BaseHandler {
                             });
                 })
                 .onErrorMap(StripeException.class, e -> {
-                    return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Stripe API Error");
+                    return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Stripe API Error", e);
                 });
     }
 }
@@ -0,0 +1,169 @@
+package com.orders.routes.stripe.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.orders.model.IdempotencyKey;
+import com.orders.routes.stripe.dto.CheckoutSessionRes;
+import com.orders.routes.stripe.repository.IdempotencyKeysRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// runs a checkout at most once per Idempotency-Key and request body; duplicates get the stored CheckoutSessionRes
+@Slf4j
+@Component
+public class CheckoutIdempotency implements MeterBinder {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    // sorted, so that the fingerprint of a request does not depend on how its maps were built
+    private static final ObjectMapper FINGERPRINT_MAPPER = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    // calls placing.run() right before the order insert, after which a failed attempt is never run again
+    @FunctionalInterface
+    public interface Checkout {
+        Mono<CheckoutSessionRes> run(Runnable placing);
+    }
+
+    private final IdempotencyKeysRepository idempotencyKeysRepository;
+    private final AsyncCache<String, CheckoutSessionRes> cache;
+    private final Duration retention;
+    private final Duration lease;
+    private final Duration maxWait;
+    private final Duration pollInterval;
+
+    @Autowired
+    public CheckoutIdempotency(
+            IdempotencyKeysRepository idempotencyKeysRepository,
+            @Value("${idempotency.checkout.retention}") Duration retention,
+            @Value("${idempotency.checkout.lease}") Duration lease,
+            @Value("${idempotency.checkout.max-wait}") Duration maxWait,
+            @Value("${idempotency.checkout.poll-interval}") Duration pollInterval,
+            @Value("${idempotency.checkout.cache-ttl}") Duration cacheTtl,
+            @Value("${idempotency.checkout.cache-max-size}") long cacheMaxSize
+    ) {
+        this.idempotencyKeysRepository = idempotencyKeysRepository;
+        this.retention = retention;
+        this.lease = lease;
+        this.maxWait = maxWait;
+        this.pollInterval = pollInterval;
+        // failed attempts are dropped by the cache, so a retry after a failure runs the checkout again
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .buildAsync();
+    }
+
+    // request is the parsed body the key is tied to
+    public Mono<CheckoutSessionRes> execute(String auth0Id, String idempotencyKey, Object request, Checkout checkout) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Idempotency-Key"));
+        }
+        String id = auth0Id + ":" + idempotencyKey;
+        String requestHash = fingerprint(request);
+        // the attempt outlives the request that started it, so that its retry picks up the result
+        return Mono.fromFuture(() -> this.cache.get(id + ":" + requestHash, (key, executor) -> this.claimOrAwait(id, requestHash, checkout, Instant.now().plus(this.maxWait)).toFuture()), true);
+    }
+
+    private Mono<CheckoutSessionRes> claimOrAwait(String id, String requestHash, Checkout checkout, Instant deadline) {
+        IdempotencyKey started = IdempotencyKey.started(id, requestHash, UUID.randomUUID().toString(), Instant.now().plus(this.lease));
+        return this.idempotencyKeysRepository.insert(started)
+                .thenReturn(true)
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false))
+                .flatMap(claimed -> claimed
+                        ? this.run(started, checkout)
+                        : this.await(id, requestHash, checkout, deadline));
+    }
+
+    // every write after the claim is conditional on still holding the lease, which is renewed while the checkout runs
+    private Mono<CheckoutSessionRes> run(IdempotencyKey key, Checkout checkout) {
+        AtomicBoolean placing = new AtomicBoolean();
+        return Mono.usingWhen(Mono.fromSupplier(() -> this.renewals(key).subscribe()),
+                        renewals -> Mono.defer(() -> checkout.run(() -> placing.set(true))),
+                        renewals -> Mono.fromRunnable(renewals::dispose))
+                .flatMap(res -> this.idempotencyKeysRepository
+                        .finish(key.getId(), key.getLeaseId(), IdempotencyKey.Status.COMPLETED.name(), res.getUrl(), Instant.now().plus(this.retention))
+                        .doOnNext(finished -> {
+                            if (finished == 0) {
+                                log.warn("Lease on Idempotency-Key {} expired before its checkout completed", key.getId());
+                            }
+                        })
+                        .thenReturn(res))
+                .onErrorResume(e -> (placing.get()
+                        // an order, and maybe a Stripe session, may exist: a retry must not place another one
+                        ? this.idempotencyKeysRepository.finish(key.getId(), key.getLeaseId(), IdempotencyKey.Status.FAILED.name(), null, Instant.now().plus(this.retention))
+                        // nothing was created: release the key so that the client's retry can try again
+                        : this.idempotencyKeysRepository.deleteByIdAndLeaseId(key.getId(), key.getLeaseId()))
+                        .then(Mono.error(e)));
+    }
+
+    private Flux<Long> renewals(IdempotencyKey key) {
+        return Flux.interval(this.lease.dividedBy(3))
+                .concatMap(tick -> this.idempotencyKeysRepository.renew(key.getId(), key.getLeaseId(), Instant.now().plus(this.lease))
+                        .onErrorResume(e -> {
+                            log.warn("Could not renew the lease on Idempotency-Key {}", key.getId(), e);
+                            return Mono.empty();
+                        }));
+    }
+
+    private Mono<CheckoutSessionRes> await(String id, String requestHash, Checkout checkout, Instant deadline) {
+        return this.idempotencyKeysRepository.findById(id)
+                .flatMap(key -> {
+                    if (!requestHash.equals(key.getRequestHash())) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key was already used with a different request"));
+                    }
+                    if (key.getStatus() == IdempotencyKey.Status.COMPLETED) {
+                        return Mono.just(new CheckoutSessionRes(key.getSessionUrl()));
+                    }
+                    if (key.getStatus() == IdempotencyKey.Status.FAILED) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, "The request with this Idempotency-Key failed after placing an order; retry with a new key"));
+                    }
+                    if (Instant.now().isAfter(deadline)) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, "A request with this Idempotency-Key is still in progress"));
+                    }
+                    return Mono.delay(this.pollInterval).then(Mono.defer(() -> this.await(id, requestHash, checkout, deadline)));
+                })
+                // the first attempt failed and released the key: this request becomes the attempt
+                .switchIfEmpty(Mono.defer(() -> this.claimOrAwait(id, requestHash, checkout, deadline)));
+    }
+
+    static String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(FINGERPRINT_MAPPER.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the checkout request", e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, this.cache, "checkout-idempotency");
+    }
+}
@@ -0,0 +1,26 @@
+package com.orders.routes.stripe.repository;
+
+import com.orders.model.IdempotencyKey;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.data.mongodb.repository.Update;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+@Repository
+public interface IdempotencyKeysRepository extends ReactiveMongoRepository<IdempotencyKey, String> {
+
+    // records the outcome of the attempt holding leaseId; 0 when another attempt has claimed the key since
+    @Query("{ '_id': ?0, 'leaseId': ?1, 'status': 'IN_PROGRESS' }")
+    @Update("{ '$set': { 'status': ?2, 'sessionUrl': ?3, 'expiresAt': ?4 } }")
+    Mono<Long> finish(String id, String leaseId, String status, String sessionUrl, Instant expiresAt);
+
+    // pushes out the lease of the attempt holding leaseId
+    @Query("{ '_id': ?0, 'leaseId': ?1, 'status': 'IN_PROGRESS' }")
+    @Update("{ '$set': { 'expiresAt': ?2 } }")
+    Mono<Long> renew(String id, String leaseId, Instant expiresAt);
+
+    Mono<Long> deleteByIdAndLeaseId(String id, String leaseId);
+}
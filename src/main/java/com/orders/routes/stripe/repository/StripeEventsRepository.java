@@ -0,0 +1,10 @@
+package com.orders.routes.stripe.repository;
+
+import com.orders.model.StripeEvent;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StripeEventsRepository extends ReactiveMongoRepository<StripeEvent, String> {
+
+}
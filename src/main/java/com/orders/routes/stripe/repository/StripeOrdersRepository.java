@@ -5,6 +5,6 @@ import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface StripeOrdersRepository extends ReactiveMongoRepository<Order, String> {
+public interface StripeOrdersRepository extends ReactiveMongoRepository<Order, String>, StripeOrdersRepositoryCustom {
 
 }
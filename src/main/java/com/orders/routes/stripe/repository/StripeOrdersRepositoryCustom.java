@@ -0,0 +1,22 @@
+package com.orders.routes.stripe.repository;
+
+import com.orders.model.Order;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+public interface StripeOrdersRepositoryCustom {
+    // inserts a new order and counts it in the stats rollups
+    Mono<Order> place(Order order);
+
+    // PLACED -> PAID in one round trip; emits the order as it was before the update,
+    // or nothing if it does not exist or was already paid
+    Mono<Order> markPaid(String id, Long totalAmount);
+
+    // deletes the order if it is still unpaid; emits it as it was, or nothing if it was paid or is gone
+    Mono<Order> discardPlaced(String id);
+
+    // deletes up to limit of the oldest orders still PLACED that were created before createdBefore; emits
+    // how many were deleted
+    Mono<Long> reapPlaced(LocalDateTime createdBefore, int limit);
+}
@@ -0,0 +1,101 @@
+package com.orders.routes.stripe.repository;
+
+import com.orders.model.Order;
+import com.orders.stats.OrderStatsRecorder;
+import com.orders.versions.OrderVersions;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class StripeOrdersRepositoryCustomImpl implements StripeOrdersRepositoryCustom {
+
+    // guarded deletes of one reaped batch in flight at once
+    private static final int REMOVE_CONCURRENCY = 16;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final OrderStatsRecorder orderStatsRecorder;
+    private final OrderVersions orderVersions;
+
+    @Autowired
+    public StripeOrdersRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate, OrderStatsRecorder orderStatsRecorder, OrderVersions orderVersions) {
+        this.mongoTemplate = mongoTemplate;
+        this.orderStatsRecorder = orderStatsRecorder;
+        this.orderVersions = orderVersions;
+    }
+
+    @Override
+    public Mono<Order> place(Order order) {
+        return this.mongoTemplate.insert(order)
+                .flatMap(placed -> Mono.when(this.orderStatsRecorder.placed(placed), this.orderVersions.changed(placed))
+                        .thenReturn(placed));
+    }
+
+    @Override
+    public Mono<Order> markPaid(String id, Long totalAmount) {
+        if (!ObjectId.isValid(id)) {
+            return Mono.empty();
+        }
+        Query query = Query.query(Criteria.where("_id").is(new ObjectId(id))
+                .and("Status").in(Order.Status.PAID.previous()));
+        Update update = new Update()
+                .set("Status", Order.Status.PAID)
+                .set("totalAmount", totalAmount);
+        return this.mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(false), Order.class)
+                .flatMap(previous -> Mono.when(
+                                this.orderStatsRecorder.moved(previous, Order.Status.PAID, totalAmount),
+                                this.orderVersions.changed(previous))
+                        .thenReturn(previous));
+    }
+
+    @Override
+    public Mono<Order> discardPlaced(String id) {
+        if (!ObjectId.isValid(id)) {
+            return Mono.empty();
+        }
+        Query query = Query.query(Criteria.where("_id").is(new ObjectId(id)).and("Status").is(Order.Status.PLACED));
+        return this.mongoTemplate.findAndRemove(query, Order.class)
+                .flatMap(removed -> Mono.when(this.orderStatsRecorder.removed(List.of(removed)), this.orderVersions.changed(removed))
+                        .thenReturn(removed));
+    }
+
+    @Override
+    public Mono<Long> reapPlaced(LocalDateTime createdBefore, int limit) {
+        Criteria unpaid = Criteria.where("Status").is(Order.Status.PLACED).and("createdAt").lt(createdBefore);
+        Query query = Query.query(unpaid).with(Sort.by("createdAt")).limit(limit);
+        // only what the stats rollups need to drop the orders from their buckets, and the owners whose order
+        // versions change
+        query.fields().include("userId", "restaurantId", "Status", "createdAt", "totalAmount", "cartItems.quantity");
+        return this.mongoTemplate.find(query, Order.class)
+                .collectList()
+                .flatMap(orders -> {
+                    if (orders.isEmpty()) {
+                        return Mono.just(0L);
+                    }
+                    // one guarded delete per order, still conditional on PLACED so an order paid since it was read
+                    // is kept: a single deleteMany only reports a count, which cannot tell the orders it removed from
+                    // those an expired session's discardPlaced removed (and already recorded) in the meantime
+                    return Flux.fromIterable(orders)
+                            .flatMap(order -> this.mongoTemplate.remove(Query.query(Criteria.where("_id").is(order.getId())
+                                                    .and("Status").is(Order.Status.PLACED)), Order.class)
+                                            .filter(result -> result.getDeletedCount() == 1)
+                                            .map(result -> order),
+                                    REMOVE_CONCURRENCY)
+                            .collectList()
+                            .flatMap(removed -> this.removed(removed).thenReturn((long) removed.size()));
+                });
+    }
+
+    private Mono<Void> removed(List<Order> orders) {
+        return Mono.when(this.orderStatsRecorder.removed(orders), this.orderVersions.changed(orders));
+    }
+}
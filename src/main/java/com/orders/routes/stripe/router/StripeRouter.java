@@ -1,6 +1,8 @@
 package com.orders.routes.stripe.router;
 
+import com.orders.admission.AdmissionControl;
 import com.orders.routes.stripe.handlers.StripeRoutesHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.server.RequestPredicates;
@@ -12,11 +14,16 @@ import org.springframework.web.reactive.function.server.ServerResponse;
 public class StripeRouter {
 
     @Bean
-    public RouterFunction<ServerResponse> stripeRouterRoutes(StripeRoutesHandler stripeRoutesHandler) {
+    public RouterFunction<ServerResponse> stripeRouterRoutes(
+            StripeRoutesHandler stripeRoutesHandler,
+            AdmissionControl admissionControl,
+            @Value("${admission.limits.checkout}") String checkoutLimit
+    ) {
         return RouterFunctions
                 .route()
                 .nest(RequestPredicates.path("/api/orders"), builder -> {
-                    builder.POST("/create-checkout-session", stripeRoutesHandler::createCheckoutSession);
+                    builder.POST("/create-checkout-session", admissionControl.limit("checkout", checkoutLimit).apply(stripeRoutesHandler::createCheckoutSession));
+                    // Stripe retries its deliveries on its own schedule and carries no user; never turned away
                     builder.POST("/stripe-checkout-webhook", stripeRoutesHandler::stripeCheckoutWebhook);
                 })
                 .build();
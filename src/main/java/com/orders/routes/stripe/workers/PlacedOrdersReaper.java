@@ -0,0 +1,93 @@
+package com.orders.routes.stripe.workers;
+
+import com.orders.routes.stripe.repository.StripeOrdersRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+// deletes the PLACED orders of checkouts that were abandoned or failed and never got a
+// checkout.session.expired event, once they are older than unpaid-after. That must exceed the longest Stripe
+// checkout session lifetime (24h), so no reaped order can still be paid. Deletes run in batches paced to
+// max-orders-per-second; each run's total is logged and recorded on orders.reaper.reclaimed
+@Slf4j
+@Component
+public class PlacedOrdersReaper {
+
+    private final StripeOrdersRepository stripeOrdersRepository;
+    private final boolean enabled;
+    private final Duration interval;
+    private final Duration unpaidAfter;
+    private final int batchSize;
+    private final Duration pace;
+    private final DistributionSummary reclaimed;
+    private Disposable polling;
+
+    @Autowired
+    public PlacedOrdersReaper(
+            StripeOrdersRepository stripeOrdersRepository,
+            MeterRegistry meterRegistry,
+            @Value("${orders.reaper.enabled}") boolean enabled,
+            @Value("${orders.reaper.interval}") Duration interval,
+            @Value("${orders.reaper.unpaid-after}") Duration unpaidAfter,
+            @Value("${orders.reaper.batch-size}") int batchSize,
+            @Value("${orders.reaper.max-orders-per-second}") int maxOrdersPerSecond
+    ) {
+        this.stripeOrdersRepository = stripeOrdersRepository;
+        this.enabled = enabled;
+        this.interval = interval;
+        this.unpaidAfter = unpaidAfter;
+        this.batchSize = batchSize;
+        this.pace = Duration.ofMillis(1000L * batchSize / maxOrdersPerSecond);
+        this.reclaimed = DistributionSummary.builder("orders.reaper.reclaimed")
+                .description("Unpaid orders deleted per reaper run")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!this.enabled) {
+            return;
+        }
+        this.polling = Flux.interval(this.interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> this.reap()
+                        .onErrorResume(e -> {
+                            log.warn("Unpaid order reaping failed", e);
+                            return Mono.just(0L);
+                        }), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (this.polling != null) {
+            this.polling.dispose();
+        }
+    }
+
+    // one run: batches until one comes back short; emits the number of orders deleted
+    public Mono<Long> reap() {
+        LocalDateTime createdBefore = LocalDateTime.now().minus(this.unpaidAfter);
+        return this.stripeOrdersRepository.reapPlaced(createdBefore, this.batchSize)
+                .expand(deleted -> deleted == this.batchSize
+                        ? Mono.delay(this.pace).then(this.stripeOrdersRepository.reapPlaced(createdBefore, this.batchSize))
+                        : Mono.empty())
+                .reduce(0L, Long::sum)
+                .doOnNext(deleted -> {
+                    this.reclaimed.record(deleted);
+                    log.info("Reaped {} unpaid orders created before {}", deleted, createdBefore);
+                });
+    }
+}
@@ -0,0 +1,266 @@
+package com.orders.routes.stripe.workers;
+
+import com.orders.model.StripeEvent;
+import com.orders.routes.stripe.repository.StripeOrdersRepository;
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+import com.stripe.model.checkout.Session;
+import com.stripe.net.ApiResource;
+import org.bson.types.ObjectId;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+// drains the stripe_events inbox filled by the webhook and applies each event's side effects once
+@Slf4j
+@Component
+public class StripeEventsWorker {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final StripeOrdersRepository stripeOrdersRepository;
+    private final Duration pollInterval;
+    private final int batchSize;
+    private final int concurrency;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Duration maxRetryBackoff;
+    private final Duration lease;
+    private final Duration retention;
+    private Disposable polling;
+
+    @Autowired
+    public StripeEventsWorker(
+            ReactiveMongoTemplate mongoTemplate,
+            StripeOrdersRepository stripeOrdersRepository,
+            @Value("${stripe.events.poll-interval}") Duration pollInterval,
+            @Value("${stripe.events.batch-size}") int batchSize,
+            @Value("${stripe.events.concurrency}") int concurrency,
+            @Value("${stripe.events.max-attempts}") int maxAttempts,
+            @Value("${stripe.events.retry-backoff}") Duration retryBackoff,
+            @Value("${stripe.events.max-retry-backoff}") Duration maxRetryBackoff,
+            @Value("${stripe.events.lease}") Duration lease,
+            @Value("${stripe.events.retention}") Duration retention
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.stripeOrdersRepository = stripeOrdersRepository;
+        this.pollInterval = pollInterval;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff;
+        this.lease = lease;
+        this.retention = retention;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // processed events only have to outlive Stripe's redeliveries, which the _id deduplicates; FAILED ones are
+        // kept for an operator to look at
+        Index processedTtl = new Index()
+                .on("processedAt", Sort.Direction.ASC)
+                .named("processedAt_ttl")
+                .expire(this.retention)
+                .partial(PartialIndexFilter.of(Criteria.where("status").is(StripeEvent.Status.PROCESSED.name())));
+        this.polling = this.mongoTemplate.indexOps(StripeEvent.class).ensureIndex(processedTtl)
+                .onErrorResume(e -> {
+                    log.warn("Could not create the stripe_events TTL index", e);
+                    return Mono.empty();
+                })
+                .thenMany(Flux.interval(this.pollInterval))
+                .onBackpressureDrop()
+                .concatMap(tick -> this.drain()
+                        .onErrorResume(e -> {
+                            log.warn("Stripe event inbox drain failed", e);
+                            return Mono.just(0L);
+                        }), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (this.polling != null) {
+            this.polling.dispose();
+        }
+    }
+
+    // keeps taking batches until one comes back short, so a backlog does not wait for the next tick
+    public Mono<Long> drain() {
+        return this.deadLetterAbandoned()
+                .then(this.drainBatch()
+                        .expand(processed -> processed == this.batchSize ? this.drainBatch() : Mono.empty())
+                        .reduce(0L, Long::sum));
+    }
+
+    private Mono<Long> drainBatch() {
+        // claims one at a time and stops at the first miss instead of spending the whole batch on empty queries
+        return Flux.range(0, this.batchSize)
+                .concatMap(i -> this.claim().map(Optional::of).defaultIfEmpty(Optional.empty()))
+                .takeWhile(Optional::isPresent)
+                .map(Optional::get)
+                // every claimed event counts towards the batch, whatever its outcome, so that a full batch of
+                // failures still drains the next one
+                .flatMap(event -> this.process(event)
+                        .then(Mono.defer(() -> this.markProcessed(event)))
+                        .onErrorResume(e -> this.markFailed(event, e))
+                        .thenReturn(event), this.concurrency)
+                .count();
+    }
+
+    // leases one due event to this instance under a fresh lease id; a PROCESSING event whose lease ran out is due
+    // again, unless it has used up its attempts
+    private Mono<StripeEvent> claim() {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria
+                        .where("status").in(StripeEvent.Status.PENDING, StripeEvent.Status.PROCESSING)
+                        .and("nextAttemptAt").lte(now)
+                        .and("attempts").lt(this.maxAttempts))
+                .with(Sort.by("nextAttemptAt"));
+        Update update = new Update()
+                .set("status", StripeEvent.Status.PROCESSING)
+                .set("nextAttemptAt", now.plus(this.lease))
+                .set("leaseId", UUID.randomUUID().toString())
+                .inc("attempts", 1);
+        return this.mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), StripeEvent.class);
+    }
+
+    // an event whose last attempt never reported back (the instance died, or the lease ran out mid-attempt) is not
+    // claimed again; it goes to FAILED, the dead letter state, like one whose last attempt failed
+    private Mono<Void> deadLetterAbandoned() {
+        Query query = Query.query(Criteria
+                .where("status").is(StripeEvent.Status.PROCESSING)
+                .and("nextAttemptAt").lte(LocalDateTime.now())
+                .and("attempts").gte(this.maxAttempts));
+        Update update = new Update()
+                .set("status", StripeEvent.Status.FAILED)
+                .set("lastError", "Lease expired on the last of " + this.maxAttempts + " attempts")
+                .unset("leaseId");
+        return this.mongoTemplate.updateMulti(query, update, StripeEvent.class)
+                .doOnNext(result -> {
+                    if (result.getModifiedCount() > 0) {
+                        log.error("Gave up on {} Stripe events whose last attempt did not complete", result.getModifiedCount());
+                    }
+                })
+                .then();
+    }
+
+    // only the holder of the current lease reports an outcome; an attempt that outlived its lease finds the event
+    // claimed again (or finished) and leaves it to the newer attempt
+    private Query leased(StripeEvent event) {
+        return Query.query(Criteria
+                .where("_id").is(event.getId())
+                .and("status").is(StripeEvent.Status.PROCESSING)
+                .and("leaseId").is(event.getLeaseId()));
+    }
+
+    private Mono<Void> markProcessed(StripeEvent event) {
+        Update update = new Update()
+                .set("status", StripeEvent.Status.PROCESSED)
+                .set("processedAt", LocalDateTime.now())
+                .unset("nextAttemptAt")
+                .unset("leaseId");
+        return this.mongoTemplate.updateFirst(this.leased(event), update, StripeEvent.class)
+                .then();
+    }
+
+    private Mono<Void> markFailed(StripeEvent event, Throwable e) {
+        boolean unprocessable = e instanceof UnprocessableEventException;
+        boolean exhausted = unprocessable || event.getAttempts() >= this.maxAttempts;
+        if (unprocessable) {
+            log.error("Stripe event {} cannot be processed", event.getId(), e);
+        } else if (exhausted) {
+            log.error("Giving up on Stripe event {} after {} attempts", event.getId(), event.getAttempts(), e);
+        }
+        // exponential backoff: retryBackoff, 2 * retryBackoff, 4 * retryBackoff ... capped at maxRetryBackoff
+        Duration backoff = this.retryBackoff.multipliedBy(1L << Math.min(event.getAttempts() - 1, 20));
+        if (backoff.compareTo(this.maxRetryBackoff) > 0) {
+            backoff = this.maxRetryBackoff;
+        }
+        Update update = new Update()
+                .set("status", exhausted ? StripeEvent.Status.FAILED : StripeEvent.Status.PENDING)
+                .set("nextAttemptAt", LocalDateTime.now().plus(backoff))
+                .set("lastError", String.valueOf(e.getMessage()))
+                .unset("leaseId");
+        return this.mongoTemplate.updateFirst(this.leased(event), update, StripeEvent.class)
+                .then();
+    }
+
+    // deferred so that a payload that does not parse fails the returned Mono rather than the batch around it
+    public Mono<Void> process(StripeEvent stripeEvent) {
+        return Mono.defer(() -> this.apply(stripeEvent));
+    }
+
+    private Mono<Void> apply(StripeEvent stripeEvent) {
+        Event event;
+        try {
+            event = ApiResource.GSON.fromJson(stripeEvent.getPayload(), Event.class);
+        } catch (RuntimeException e) {
+            return Mono.error(new UnprocessableEventException("Payload is not a Stripe event", e));
+        }
+        if (event == null || event.getType() == null) {
+            return Mono.error(new UnprocessableEventException("Payload is not a Stripe event", null));
+        }
+        StripeObject stripeObject = event.getDataObjectDeserializer().getObject().orElse(null);
+        if (stripeObject == null) {
+            return Mono.error(new IllegalStateException("eventDataObjectDeserializer was null"));
+        }
+        if (event.getType().equals("checkout.session.completed")) {
+            String orderId = orderId((Session) stripeObject);
+            if (orderId == null) {
+                // a payment that matches no order of ours needs a person, not a retry
+                return Mono.error(new UnprocessableEventException("Completed session " + ((Session) stripeObject).getId() + " has no valid orderId", null));
+            }
+            Long totalAmount = ((Session) stripeObject).getAmountTotal();
+            // a no-op when the order is already past PLACED, e.g. for a replayed event
+            return this.stripeOrdersRepository.markPaid(orderId, totalAmount)
+                    .then();
+        }
+        if (event.getType().equals("checkout.session.expired")) {
+            String orderId = orderId((Session) stripeObject);
+            if (orderId == null) {
+                // not a session of ours, or one that never had an order: there is nothing to discard
+                log.warn("Skipping expired session {} without a valid orderId", ((Session) stripeObject).getId());
+                return Mono.empty();
+            }
+            // the customer never paid and the session can no longer be paid; a no-op if the order was paid
+            // meanwhile through another session or is already gone
+            return this.stripeOrdersRepository.discardPlaced(orderId)
+                    .then();
+        }
+        return Mono.empty();
+    }
+
+    // the order id this service put in the session's metadata, or null when there is none or it is not an ObjectId
+    private static String orderId(Session session) {
+        String orderId = session.getMetadata() == null ? null : session.getMetadata().get("orderId");
+        return orderId != null && ObjectId.isValid(orderId) ? orderId : null;
+    }
+
+    // an event that fails the same way on every attempt; it goes to FAILED without using up its retries
+    static class UnprocessableEventException extends RuntimeException {
+
+        UnprocessableEventException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.orders.stats;
+
+import com.orders.model.JobLock;
+import com.orders.model.OrderStats;
+import com.orders.routes.root.archive.OrdersArchive;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+// recomputes order_stats from orders and orders_archive in one server-side aggregation, to backfill the rollups or repair drift.
+// Runs at startup when order-stats.rebuild-on-startup is set (ORDER_STATS_REBUILD=true), on whichever instance claims
+// the job lock first; the lock is kept for order-stats.rebuild-lease, so the rest of a rollout does not rebuild again.
+// Increments applied while it runs may be overwritten by its $merge, so it is meant for a quiet period
+@Slf4j
+@Component
+public class OrderStatsRebuilder {
+
+    static final String LOCK = "order-stats-rebuild";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final boolean rebuildOnStartup;
+    private final Duration lease;
+
+    @Autowired
+    public OrderStatsRebuilder(
+            ReactiveMongoTemplate mongoTemplate,
+            @Value("${order-stats.rebuild-on-startup}") boolean rebuildOnStartup,
+            @Value("${order-stats.rebuild-lease}") Duration lease
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.lease = lease;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (this.rebuildOnStartup) {
+            this.rebuildOnce().subscribe(
+                    removed -> log.info("Order stats rebuilt, {} stale buckets removed", removed),
+                    e -> log.error("Order stats rebuild failed", e));
+        }
+    }
+
+    // empty when another instance holds the lock
+    Mono<Long> rebuildOnce() {
+        JobLock lock = new JobLock(LOCK, UUID.randomUUID().toString(), Instant.now().plus(this.lease));
+        return this.mongoTemplate.insert(lock)
+                .thenReturn(true)
+                .onErrorResume(DuplicateKeyException.class, e -> {
+                    log.info("Order stats rebuild skipped, another instance ran it within the last {}", this.lease);
+                    return Mono.just(false);
+                })
+                .filter(claimed -> claimed)
+                .flatMap(claimed -> this.rebuild()
+                        // a failed rebuild releases the lock, so the next instance started with the flag tries again
+                        .onErrorResume(e -> this.mongoTemplate
+                                .remove(Query.query(Criteria.where("_id").is(LOCK).and("leaseId").is(lock.getLeaseId())), JobLock.class)
+                                .then(Mono.error(e))));
+    }
+
+    // emits the number of stale buckets removed
+    public Mono<Long> rebuild() {
+        Date startedAt = new Date();
+        Aggregation aggregation = Aggregation.newAggregation(pipeline(startedAt));
+        return this.mongoTemplate.aggregate(aggregation, "orders", Document.class)
+                .then(Mono.defer(() -> this.mongoTemplate
+                        // buckets no order maps to any more, unless an incremental update touched them meanwhile
+                        .remove(Query.query(Criteria.where("updatedAt").not().gte(startedAt)), OrderStats.class)))
+                .map(result -> result.getDeletedCount());
+    }
+
+    // the same bucket key and day as OrderStats.day: the UTC date of createdAt. Archived orders keep their
+    // buckets, so both tiers are counted
+    static List<AggregationOperation> pipeline(Date startedAt) {
+        return List.of(
+                context -> new Document("$unionWith", OrdersArchive.COLLECTION),
+                context -> new Document("$match", new Document("restaurantId", new Document("$ne", null))),
+                context -> new Document("$group", new Document()
+                        .append("_id", new Document()
+                                .append("restaurantId", "$restaurantId")
+                                .append("day", new Document("$dateToString", new Document()
+                                        .append("format", "%Y-%m-%d")
+                                        .append("date", "$createdAt")))
+                                .append("status", "$Status"))
+                        .append("orders", new Document("$sum", 1))
+                        .append("items", new Document("$sum", new Document("$sum", "$cartItems.quantity")))
+                        .append("revenue", new Document("$sum", new Document("$ifNull", List.of("$totalAmount", 0))))),
+                context -> new Document("$project", new Document()
+                        .append("_id", 0)
+                        .append("restaurantId", "$_id.restaurantId")
+                        .append("day", "$_id.day")
+                        .append("status", "$_id.status")
+                        .append("orders", 1)
+                        .append("items", 1)
+                        .append("revenue", 1)
+                        .append("updatedAt", new Document("$literal", startedAt))),
+                context -> new Document("$merge", new Document()
+                        .append("into", "order_stats")
+                        .append("on", List.of("restaurantId", "day", "status"))
+                        .append("whenMatched", "replace")
+                        .append("whenNotMatched", "insert"))
+        );
+    }
+}
@@ -0,0 +1,108 @@
+package com.orders.stats;
+
+import com.orders.model.CartItem;
+import com.orders.model.Order;
+import com.orders.model.OrderStats;
+import com.orders.routes.root.repository.StatusTransition;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.function.Consumer;
+
+// applies order changes to the order_stats rollups as $inc upserts, from the order as it was before the
+// change (the pre-image the conditional updates return), so a bucket is only touched for a change that was
+// actually applied. Rollups are derived data: a failed update is logged and left for a rebuild to repair
+// instead of failing the order change that has already been written
+@Slf4j
+@Component
+public class OrderStatsRecorder {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public OrderStatsRecorder(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public Mono<Void> placed(Order order) {
+        return this.execute(bulkOps -> this.add(bulkOps, order, order.getStatus(), 1, order.getTotalAmount()));
+    }
+
+    // deleted orders (expired or reaped checkouts) leave their buckets
+    public Mono<Void> removed(Collection<Order> orders) {
+        if (orders.isEmpty()) {
+            return Mono.empty();
+        }
+        return this.execute(bulkOps -> {
+            for (Order order : orders) {
+                this.add(bulkOps, order, order.getStatus(), -1, order.getTotalAmount());
+            }
+        });
+    }
+
+    // the order leaves its bucket and enters the one of its new status, with totalAmount as its revenue
+    public Mono<Void> moved(Order before, Order.Status status, Long totalAmount) {
+        return this.execute(bulkOps -> this.move(bulkOps, before, status, totalAmount));
+    }
+
+    public Mono<Void> moved(Collection<StatusTransition> transitions) {
+        if (transitions.isEmpty()) {
+            return Mono.empty();
+        }
+        return this.execute(bulkOps -> {
+            for (StatusTransition transition : transitions) {
+                this.move(bulkOps, transition.getOrder(), transition.getTo(), transition.getOrder().getTotalAmount());
+            }
+        });
+    }
+
+    private void move(ReactiveBulkOperations bulkOps, Order before, Order.Status status, Long totalAmount) {
+        this.add(bulkOps, before, before.getStatus(), -1, before.getTotalAmount());
+        this.add(bulkOps, before, status, 1, totalAmount);
+    }
+
+    private void add(ReactiveBulkOperations bulkOps, Order order, Order.Status status, int sign, Long totalAmount) {
+        Query query = Query.query(Criteria.where("restaurantId").is(order.getRestaurantId())
+                .and("day").is(OrderStats.day(order.getCreatedAt()))
+                .and("status").is(status));
+        Update update = new Update()
+                .inc("orders", sign)
+                .inc("items", sign * items(order))
+                .inc("revenue", sign * (totalAmount == null ? 0L : totalAmount))
+                .set("updatedAt", new Date());
+        bulkOps.upsert(query, update);
+    }
+
+    private Mono<Void> execute(Consumer<ReactiveBulkOperations> updates) {
+        ReactiveBulkOperations bulkOps = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OrderStats.class);
+        updates.accept(bulkOps);
+        return bulkOps.execute()
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Order stats update failed, rollups will drift until the next rebuild", e);
+                    return Mono.empty();
+                });
+    }
+
+    private static long items(Order order) {
+        long items = 0;
+        if (order.getCartItems() != null) {
+            for (CartItem cartItem : order.getCartItems()) {
+                if (cartItem.getQuantity() != null) {
+                    items += cartItem.getQuantity();
+                }
+            }
+        }
+        return items;
+    }
+}
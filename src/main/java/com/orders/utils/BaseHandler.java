@@ -4,23 +4,29 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Mono;
 
 public abstract class BaseHandler {
 
-    protected WebClient webClient;
     private ReactiveJwtDecoder jwtDecoder;
 
-    protected void initializeBaseHandler(String baseUrl, ReactiveJwtDecoder jwtDecoder) {
-        this.webClient = WebClient.builder()
-                .baseUrl(baseUrl)
-                .build();
+    protected void initializeBaseHandler(ReactiveJwtDecoder jwtDecoder) {
         this.jwtDecoder = jwtDecoder;
     }
 
+    // the resource server filter has already verified the bearer token; take the subject from its
+    // principal and only decode the header ourselves when no authenticated principal is present
+    public Mono<String> getAuth0Id(ServerRequest req) {
+        return req.principal()
+                .filter(JwtAuthenticationToken.class::isInstance)
+                .map(principal -> ((JwtAuthenticationToken) principal).getToken().getSubject())
+                .switchIfEmpty(Mono.defer(() -> this.getAuth0IdFromToken(req.headers().firstHeader("Authorization"))));
+    }
+
     public Mono<String> getAuth0IdFromToken(String authorizationHeader) {
         String tokenValue = authorizationHeader.replace("Bearer ", "");
         return jwtDecoder.decode(tokenValue)
@@ -0,0 +1,23 @@
+package com.orders.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+// times a Mono from subscription to its terminal signal, tagging each sample with outcome=success|error;
+// callers must only pass tags with a small, fixed set of values
+public final class MonoTimer {
+
+    private MonoTimer() {
+    }
+
+    public static <T> Mono<T> time(Mono<T> source, MeterRegistry registry, String name, String... tags) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            return source
+                    .doOnSuccess(value -> sample.stop(registry.timer(name, Tags.of(tags).and("outcome", "success"))))
+                    .doOnError(e -> sample.stop(registry.timer(name, Tags.of(tags).and("outcome", "error"))));
+        });
+    }
+}
@@ -0,0 +1,108 @@
+package com.orders.utils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// the Stripe SDK is blocking; every Stripe interaction runs here so that it never occupies a
+// netty event loop and a slow Stripe API can only back up checkouts, not the rest of the service
+@Component
+public class StripeBulkhead implements MeterBinder, DisposableBean {
+
+    public enum RejectionPolicy {
+        // reject with 503 as soon as the pool and its queue are full
+        FAIL_FAST,
+        // retry submission with backoff before rejecting with 503
+        RETRY
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+    private final RejectionPolicy rejectionPolicy;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    @Autowired
+    public StripeBulkhead(
+            @Value("${stripe.bulkhead.max-concurrent-calls}") int maxConcurrentCalls,
+            @Value("${stripe.bulkhead.max-queued-calls}") int maxQueuedCalls,
+            @Value("${stripe.bulkhead.rejection-policy}") RejectionPolicy rejectionPolicy,
+            @Value("${stripe.bulkhead.max-retries}") int maxRetries,
+            @Value("${stripe.bulkhead.retry-backoff}") Duration retryBackoff
+    ) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                maxConcurrentCalls,
+                maxConcurrentCalls,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueuedCalls)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "stripe-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+        this.scheduler = Schedulers.fromExecutorService(this.executor, "stripe");
+        this.rejectionPolicy = rejectionPolicy;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+    }
+
+    public <T> Mono<T> call(Callable<T> call) {
+        Mono<T> mono = Mono.fromCallable(call).subscribeOn(this.scheduler);
+        if (this.rejectionPolicy == RejectionPolicy.RETRY) {
+            mono = mono.retryWhen(Retry.backoff(this.maxRetries, this.retryBackoff)
+                    .filter(RejectedExecutionException.class::isInstance)
+                    .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        }
+        return mono.onErrorMap(RejectedExecutionException.class, e -> {
+            this.rejectedCalls.incrementAndGet();
+            return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Payment provider busy");
+        });
+    }
+
+    public int activeCalls() {
+        return this.executor.getActiveCount();
+    }
+
+    public int queuedCalls() {
+        return this.executor.getQueue().size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stripe.bulkhead.active", this, StripeBulkhead::activeCalls).register(registry);
+        Gauge.builder("stripe.bulkhead.queued", this, StripeBulkhead::queuedCalls).register(registry);
+        Gauge.builder("stripe.bulkhead.max", this.executor, ThreadPoolExecutor::getMaximumPoolSize).register(registry);
+        FunctionCounter.builder("stripe.bulkhead.rejected", this.rejectedCalls, AtomicLong::get).register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        this.scheduler.dispose();
+    }
+}
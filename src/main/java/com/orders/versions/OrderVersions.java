@@ -0,0 +1,115 @@
+package com.orders.versions;
+
+import com.orders.model.Order;
+import com.orders.model.OrderVersion;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// per-customer and per-restaurant change versions behind the order lists' ETags. Every write that changes
+// which orders a list shows, or their status, bumps the versions of the order's customer and restaurant
+// after it has been applied; a list reads its version before running its query, so a response is never
+// tagged with a version newer than its content
+@Slf4j
+@Component
+public class OrderVersions {
+
+    private static final String USER = "userId";
+    private static final String RESTAURANT = "restaurantId";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public OrderVersions(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public static String key(String ownerField, String owner) {
+        return ownerField + ":" + owner;
+    }
+
+    private static Set<String> keys(Collection<Order> orders) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (Order order : orders) {
+            if (order.getUserId() != null) {
+                keys.add(key(USER, order.getUserId()));
+            }
+            if (order.getRestaurantId() != null) {
+                keys.add(key(RESTAURANT, order.getRestaurantId()));
+            }
+        }
+        return keys;
+    }
+
+    public Mono<Void> changed(Order order) {
+        return this.changed(List.of(order));
+    }
+
+    // one unordered bulk of $inc upserts for the distinct customers and restaurants of the orders
+    public Mono<Void> changed(Collection<Order> orders) {
+        Set<String> keys = keys(orders);
+        if (keys.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+                    ReactiveBulkOperations bulkOps = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OrderVersion.class);
+                    for (String key : keys) {
+                        bulkOps.upsert(Query.query(Criteria.where("_id").is(key)), new Update()
+                                .inc("version", 1)
+                                .setOnInsert("epoch", new ObjectId().toHexString()));
+                    }
+                    return bulkOps.execute();
+                })
+                .retryWhen(Retry.backoff(2, Duration.ofMillis(50)))
+                .then()
+                // the write itself has been applied and must not fail now; until the next change of these
+                // owners, a client revalidating an older ETag may be told its copy is current
+                .onErrorResume(e -> {
+                    log.error("Order version bump failed for {}, lists may be served as not modified until their next change", keys, e);
+                    return Mono.empty();
+                });
+    }
+
+    // flags the owners of orders about to be archived; unlike changed, fails rather than let the archiver go on
+    public Mono<Void> archiving(Collection<Order> orders) {
+        Set<String> keys = keys(orders);
+        if (keys.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            ReactiveBulkOperations bulkOps = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, OrderVersion.class);
+            for (String key : keys) {
+                bulkOps.upsert(Query.query(Criteria.where("_id").is(key)), new Update()
+                        .setOnInsert("epoch", new ObjectId().toHexString())
+                        .setOnInsert("version", 0L));
+                // the bump invalidates lists served without the archive before the flag was set
+                bulkOps.updateOne(Query.query(Criteria.where("_id").is(key).and("archived").ne(true)), new Update()
+                        .set("archived", true)
+                        .inc("version", 1));
+            }
+            return bulkOps.execute().then();
+        });
+    }
+
+    // the owner's counter as of now; read only, counters are created by the writes that bump them
+    public Mono<OrderVersion> current(String ownerField, String owner) {
+        String key = key(ownerField, owner);
+        return this.mongoTemplate.findById(key, OrderVersion.class)
+                .defaultIfEmpty(OrderVersion.unwritten(key));
+    }
+}
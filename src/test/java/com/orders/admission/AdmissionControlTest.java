@@ -0,0 +1,131 @@
+package com.orders.admission;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    // nanoTime may be negative; buckets must only ever compare differences
+    private final AtomicLong now = new AtomicLong(-TimeUnit.MINUTES.toNanos(1));
+    private final AdmissionControl admissionControl = new AdmissionControl(true, 4, Duration.ofMinutes(10), Duration.ofMinutes(1), this.now::get);
+
+    @Test
+    void burstIsAdmittedThenOnePermitPerInterval() {
+        AdmissionControl.Limiter limiter = this.limiter("3/3s");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("auth0|user", this.now.get()));
+        }
+        assertEquals(TimeUnit.SECONDS.toNanos(1), limiter.tryAcquire("auth0|user", this.now.get()));
+        // a rejection takes nothing from the bucket
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(600), limiter.tryAcquire("auth0|user", this.now.get()));
+
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        assertEquals(0, limiter.tryAcquire("auth0|user", this.now.get()));
+        assertTrue(limiter.tryAcquire("auth0|user", this.now.get()) > 0);
+    }
+
+    @Test
+    void everySubHasItsOwnBucket() {
+        AdmissionControl.Limiter limiter = this.limiter("1/1m");
+
+        assertEquals(0, limiter.tryAcquire("auth0|flooding", this.now.get()));
+        assertTrue(limiter.tryAcquire("auth0|flooding", this.now.get()) > 0);
+        assertEquals(0, limiter.tryAcquire("auth0|other", this.now.get()));
+        // and so does every route limit
+        assertEquals(0, this.limiter("1/1m").tryAcquire("auth0|flooding", this.now.get()));
+    }
+
+    @Test
+    void rejectedRequestsGet429WithRetryAfter() {
+        HandlerFilterFunction<ServerResponse, ServerResponse> limit = this.admissionControl.limit("checkout", "1/10s");
+        ServerRequest request = MockServerRequest.builder().principal(principal("auth0|user")).build();
+
+        StepVerifier.create(limit.filter(request, req -> ServerResponse.ok().build()))
+                .assertNext(response -> assertEquals(HttpStatus.OK, response.statusCode()))
+                .verifyComplete();
+        StepVerifier.create(limit.filter(request, req -> ServerResponse.ok().build()))
+                .assertNext(response -> {
+                    assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.statusCode());
+                    assertEquals("10", response.headers().getFirst(HttpHeaders.RETRY_AFTER));
+                })
+                .verifyComplete();
+        // no verified token, no sub to key on: left to the handler
+        StepVerifier.create(limit.filter(MockServerRequest.builder().build(), req -> ServerResponse.ok().build()))
+                .assertNext(response -> assertEquals(HttpStatus.OK, response.statusCode()))
+                .verifyComplete();
+    }
+
+    @Test
+    void sweepEvictsOnlyBucketsIdleAndFull() {
+        AdmissionControl.Limiter limiter = this.limiter("2/1m");
+        limiter.tryAcquire("auth0|idle", this.now.get());
+        this.now.addAndGet(TimeUnit.MINUTES.toNanos(9));
+        limiter.tryAcquire("auth0|recent", this.now.get());
+        assertEquals(2, this.admissionControl.buckets());
+
+        this.now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        this.admissionControl.sweep(this.now.get());
+        assertEquals(1, this.admissionControl.buckets());
+
+        // an evicted bucket comes back full
+        assertEquals(0, limiter.tryAcquire("auth0|idle", this.now.get()));
+        assertEquals(0, limiter.tryAcquire("auth0|idle", this.now.get()));
+        assertTrue(limiter.tryAcquire("auth0|idle", this.now.get()) > 0);
+    }
+
+    @Test
+    void concurrentRequestsNeverOverdrawABucket() throws InterruptedException {
+        AdmissionControl.Limiter limiter = this.limiter("100/1m");
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (limiter.tryAcquire("auth0|user", this.now.get()) == 0) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100, admitted.get());
+    }
+
+    private AdmissionControl.Limiter limiter(String limit) {
+        return (AdmissionControl.Limiter) this.admissionControl.limit("route", limit);
+    }
+
+    private static JwtAuthenticationToken principal(String subject) {
+        return new JwtAuthenticationToken(Jwt.withTokenValue("token").header("alg", "none").subject(subject).build());
+    }
+}
@@ -0,0 +1,55 @@
+package com.orders.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OwnerRestaurantCacheTest {
+
+    @Test
+    void concurrentMissesShareOneLookup() {
+        OwnerRestaurantCache cache = new OwnerRestaurantCache(Duration.ofMinutes(5), 100);
+        AtomicInteger lookups = new AtomicInteger();
+        Supplier<Mono<String>> loader = () -> Mono.fromSupplier(() -> {
+            lookups.incrementAndGet();
+            return "restaurant";
+        }).delayElement(Duration.ofMillis(100));
+
+        StepVerifier.create(Flux.range(0, 20).flatMap(i -> cache.get("auth0|owner", loader)))
+                .expectNextCount(20)
+                .verifyComplete();
+
+        assertEquals(1, lookups.get());
+        assertEquals(1, cache.stats().missCount());
+        assertEquals(19, cache.stats().hitCount());
+    }
+
+    @Test
+    void invalidateForcesAnotherLookup() {
+        OwnerRestaurantCache cache = new OwnerRestaurantCache(Duration.ofMinutes(5), 100);
+        AtomicInteger lookups = new AtomicInteger();
+        Supplier<Mono<String>> loader = () -> Mono.fromSupplier(() -> "restaurant-" + lookups.incrementAndGet());
+
+        StepVerifier.create(cache.get("auth0|owner", loader)).expectNext("restaurant-1").verifyComplete();
+        StepVerifier.create(cache.get("auth0|owner", loader)).expectNext("restaurant-1").verifyComplete();
+        cache.invalidate("auth0|owner");
+        StepVerifier.create(cache.get("auth0|owner", loader)).expectNext("restaurant-2").verifyComplete();
+    }
+
+    @Test
+    void failedLookupsAreNotCached() {
+        OwnerRestaurantCache cache = new OwnerRestaurantCache(Duration.ofMinutes(5), 100);
+        StepVerifier.create(cache.get("auth0|owner", () -> Mono.error(new IllegalStateException("down"))))
+                .verifyError(IllegalStateException.class);
+        StepVerifier.create(cache.get("auth0|owner", () -> Mono.just("restaurant")))
+                .expectNext("restaurant")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,63 @@
+package com.orders.cache;
+
+import com.orders.routes.stripe.dto.MenuItem;
+import com.orders.routes.stripe.dto.Restaurant;
+import com.orders.routes.stripe.dto.RestaurantMenu;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RestaurantMenuCacheTest {
+
+    @Test
+    void concurrentCheckoutsShareOneLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, Mono<Restaurant>> loader = slug -> Mono.fromSupplier(() -> restaurant(loads.incrementAndGet()))
+                .delayElement(Duration.ofMillis(100));
+        RestaurantMenuCache cache = new RestaurantMenuCache(Duration.ofMinutes(10), Duration.ofMinutes(1), 100, loader);
+
+        StepVerifier.create(Flux.range(0, 50).flatMap(i -> cache.get("slug")))
+                .expectNextCount(50)
+                .verifyComplete();
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void staleEntryIsServedWhileRefreshing() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, Mono<Restaurant>> loader = slug -> Mono.fromSupplier(() -> restaurant(loads.incrementAndGet()))
+                .delayElement(Duration.ofMillis(200));
+        RestaurantMenuCache cache = new RestaurantMenuCache(Duration.ofMinutes(10), Duration.ofMillis(50), 100, loader);
+
+        StepVerifier.create(cache.get("slug").map(RestaurantMenu::getDeliveryPrice))
+                .expectNext(1L)
+                .verifyComplete();
+        Thread.sleep(100);
+        // past refreshAfter: the old menu comes back immediately and a reload starts behind it
+        StepVerifier.create(cache.get("slug").map(RestaurantMenu::getDeliveryPrice))
+                .expectNext(1L)
+                .expectComplete()
+                .verify(Duration.ofMillis(100));
+        Thread.sleep(400);
+        StepVerifier.create(cache.get("slug").map(RestaurantMenu::getDeliveryPrice))
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    private static Restaurant restaurant(long version) {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setId("restaurant");
+        restaurant.setDeliveryPrice(version);
+        restaurant.setMenuItems(List.of(new MenuItem("item", "Item", 500L)));
+        return restaurant;
+    }
+}
@@ -0,0 +1,124 @@
+package com.orders.client;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RestaurantServiceClientTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    // how the stub answers the next request: a status and how long to wait before answering
+    private final AtomicReference<HttpStatus> status = new AtomicReference<>(HttpStatus.OK);
+    private final AtomicReference<Duration> latency = new AtomicReference<>(Duration.ZERO);
+    // the first this many requests are answered with 503 regardless of status
+    private final AtomicInteger failFirst = new AtomicInteger();
+    private DisposableServer server;
+    private RestaurantServiceClient client;
+
+    @BeforeEach
+    void setUp() {
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.get("/cms/{auth0Id}", (req, res) -> {
+                    HttpStatus answer = this.requests.incrementAndGet() <= this.failFirst.get()
+                            ? HttpStatus.SERVICE_UNAVAILABLE
+                            : this.status.get();
+                    return Mono.delay(this.latency.get())
+                            .then(res.status(answer.value())
+                                    .header("Content-Type", "application/json")
+                                    .sendString(Mono.just("{\"id\":\"restaurant-1\"}"))
+                                    .then());
+                }))
+                .bindNow();
+        this.client = new RestaurantServiceClient(
+                WebClient.builder(),
+                "http://127.0.0.1:" + this.server.port(),
+                10,
+                50,
+                Duration.ofSeconds(30),
+                Duration.ofSeconds(1),
+                Duration.ofMillis(500),
+                Duration.ofMillis(500),
+                2,
+                Duration.ofMillis(10),
+                50,
+                10,
+                Duration.ofSeconds(30)
+        );
+        // the first request in a JVM pays for netty and codec initialization, which would read as a timeout
+        this.client.getOwnerRestaurant("auth0|warm-up", "Bearer token").block(Duration.ofSeconds(5));
+        this.requests.set(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.client.destroy();
+        this.server.disposeNow();
+    }
+
+    @Test
+    void retriesServerErrorsThenSucceeds() {
+        this.failFirst.set(2);
+
+        StepVerifier.create(this.client.getOwnerRestaurant("auth0|owner", "Bearer token").map(r -> r.getId()))
+                .expectNext("restaurant-1")
+                .verifyComplete();
+        assertEquals(3, this.requests.get());
+    }
+
+    @Test
+    void slowResponsesTimeOutAfterBoundedRetries() {
+        this.latency.set(Duration.ofSeconds(2));
+
+        StepVerifier.create(this.client.getOwnerRestaurant("auth0|owner", "Bearer token"))
+                .expectErrorMatches(e -> e instanceof RestaurantServiceException ex
+                        && ex.getStatusCode() == HttpStatus.GATEWAY_TIMEOUT)
+                .verify(Duration.ofSeconds(3));
+        // the first attempt and two retries
+        assertEquals(3, this.requests.get());
+    }
+
+    @Test
+    void clientErrorsAreNotRetried() {
+        this.status.set(HttpStatus.NOT_FOUND);
+
+        StepVerifier.create(this.client.getOwnerRestaurant("auth0|owner", "Bearer token"))
+                .expectError(WebClientResponseException.NotFound.class)
+                .verify();
+        assertEquals(1, this.requests.get());
+        assertEquals(CircuitBreaker.State.CLOSED, this.client.breakerState());
+    }
+
+    @Test
+    void openBreakerFailsFastWithoutCallingUpstream() {
+        this.status.set(HttpStatus.INTERNAL_SERVER_ERROR);
+        // 4 calls x 3 attempts fill the 10-call window with failures
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(this.client.getOwnerRestaurant("auth0|owner", "Bearer token"))
+                    .expectError()
+                    .verify();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, this.client.breakerState());
+        int requestsWhenOpened = this.requests.get();
+
+        StepVerifier.create(this.client.getOwnerRestaurant("auth0|owner", "Bearer token"))
+                .expectErrorMatches(e -> e instanceof RestaurantServiceException ex
+                        && ex.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE)
+                .verify(Duration.ofMillis(100));
+        assertEquals(requestsWhenOpened, this.requests.get());
+    }
+}
@@ -0,0 +1,79 @@
+package com.orders.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CachingReactiveJwtDecoderTest {
+
+    @Test
+    void verifiesEachTokenOnce() {
+        AtomicInteger verifications = new AtomicInteger();
+        ReactiveJwtDecoder delegate = token -> Mono.fromSupplier(() -> {
+            verifications.incrementAndGet();
+            return jwt(token, Instant.now().plusSeconds(3600));
+        });
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CachingReactiveJwtDecoder decoder = new CachingReactiveJwtDecoder(delegate, 100, Duration.ofMinutes(10), meterRegistry);
+
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(decoder.decode("token-a").map(Jwt::getSubject)).expectNext("auth0|token-a").verifyComplete();
+        }
+        StepVerifier.create(decoder.decode("token-b").map(Jwt::getSubject)).expectNext("auth0|token-b").verifyComplete();
+
+        assertEquals(2, verifications.get());
+        // only the verifications are timed, cache hits are not
+        assertEquals(2, meterRegistry.get("security.jwt.decode").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void doesNotServeTokensPastExp() throws InterruptedException {
+        AtomicInteger verifications = new AtomicInteger();
+        ReactiveJwtDecoder delegate = token -> Mono.fromSupplier(() -> {
+            verifications.incrementAndGet();
+            return jwt(token, Instant.now().plusMillis(100));
+        });
+        CachingReactiveJwtDecoder decoder = new CachingReactiveJwtDecoder(delegate, 100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+        decoder.decode("token").block();
+        decoder.decode("token").block();
+        Thread.sleep(200);
+        decoder.decode("token").block();
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void rejectedTokensAreNotCached() {
+        AtomicInteger verifications = new AtomicInteger();
+        ReactiveJwtDecoder delegate = token -> Mono.defer(() -> {
+            verifications.incrementAndGet();
+            return Mono.error(new BadJwtException("bad signature"));
+        });
+        CachingReactiveJwtDecoder decoder = new CachingReactiveJwtDecoder(delegate, 100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+        StepVerifier.create(decoder.decode("token")).verifyError(BadJwtException.class);
+        StepVerifier.create(decoder.decode("token")).verifyError(BadJwtException.class);
+
+        assertEquals(2, verifications.get());
+    }
+
+    private static Jwt jwt(String token, Instant expiresAt) {
+        return Jwt.withTokenValue(token)
+                .header("alg", "RS256")
+                .subject("auth0|" + token)
+                .issuedAt(Instant.now())
+                .expiresAt(expiresAt)
+                .build();
+    }
+}
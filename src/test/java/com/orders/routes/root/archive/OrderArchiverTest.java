@@ -0,0 +1,141 @@
+package com.orders.routes.root.archive;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.DeleteResult;
+import com.orders.model.Order;
+import com.orders.versions.OrderVersions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderArchiverTest {
+
+    private ReactiveMongoTemplate mongoTemplate;
+    private ReactiveBulkOperations bulkOps;
+    private OrderVersions orderVersions;
+    private OrderArchiver archiver;
+
+    @BeforeEach
+    void setUp() {
+        this.mongoTemplate = mock(ReactiveMongoTemplate.class);
+        this.bulkOps = mock(ReactiveBulkOperations.class);
+        when(this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class, OrdersArchive.COLLECTION)).thenReturn(this.bulkOps);
+        when(this.bulkOps.replaceOne(any(Query.class), any(Object.class), any(FindAndReplaceOptions.class))).thenReturn(this.bulkOps);
+        when(this.bulkOps.execute()).thenReturn(Mono.just(mock(BulkWriteResult.class)));
+        this.orderVersions = mock(OrderVersions.class);
+        when(this.orderVersions.archiving(any())).thenReturn(Mono.empty());
+        this.archiver = new OrderArchiver(this.mongoTemplate, new OrdersArchive(Duration.ofDays(90)), this.orderVersions,
+                true, Duration.ofHours(1), 100, 1000);
+    }
+
+    @Test
+    void batchIsCopiedBeforeItIsRemoved() {
+        Order first = delivered();
+        Order second = delivered();
+        when(this.mongoTemplate.find(any(Query.class), eq(Order.class))).thenReturn(Flux.just(first, second));
+        when(this.mongoTemplate.remove(any(Query.class), eq(Order.class))).thenReturn(Mono.just(DeleteResult.acknowledged(2)));
+
+        StepVerifier.create(this.archiver.archive())
+                .expectNext(2L)
+                .verifyComplete();
+
+        InOrder inOrder = inOrder(this.orderVersions, this.bulkOps, this.mongoTemplate);
+        // owners are flagged before their first order leaves the hot collection
+        inOrder.verify(this.orderVersions).archiving(List.of(first, second));
+        inOrder.verify(this.bulkOps).replaceOne(eq(Query.query(Criteria.where("_id").is(first.getId()))),
+                eq(first), any(FindAndReplaceOptions.class));
+        inOrder.verify(this.bulkOps).execute();
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        inOrder.verify(this.mongoTemplate).remove(removed.capture(), eq(Order.class));
+        // the copies are upserts by _id, so copying a batch again is harmless
+        ArgumentCaptor<FindAndReplaceOptions> options = ArgumentCaptor.forClass(FindAndReplaceOptions.class);
+        verify(this.bulkOps, times(2)).replaceOne(any(Query.class), any(Object.class), options.capture());
+        assertTrue(options.getValue().isUpsert());
+        // the remove is still conditional on the order being archivable
+        List<Document> and = removed.getValue().getQueryObject().getList("$and", Document.class);
+        assertEquals(new Document("$in", List.of(first.getId(), second.getId())), and.get(0).get("_id"));
+        assertEquals(Order.Status.DELIVERED, and.get(1).get("Status"));
+        verify(this.mongoTemplate, never()).remove(any(Query.class), eq(OrdersArchive.COLLECTION));
+    }
+
+    @Test
+    void orderThatChangedSinceTheCopyStaysHotAndLeavesTheArchive() {
+        Order archivable = delivered();
+        Order changedMeanwhile = delivered();
+        when(this.mongoTemplate.find(any(Query.class), eq(Order.class)))
+                .thenReturn(Flux.just(archivable, changedMeanwhile), Flux.just(idOnly(changedMeanwhile)));
+        when(this.mongoTemplate.remove(any(Query.class), eq(Order.class))).thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+        when(this.mongoTemplate.remove(any(Query.class), eq(OrdersArchive.COLLECTION))).thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+
+        StepVerifier.create(this.archiver.archive())
+                .expectNext(1L)
+                .verifyComplete();
+
+        ArgumentCaptor<Query> dropped = ArgumentCaptor.forClass(Query.class);
+        verify(this.mongoTemplate).remove(dropped.capture(), eq(OrdersArchive.COLLECTION));
+        assertEquals(new Document("$in", List.of(changedMeanwhile.getId())), dropped.getValue().getQueryObject().get("_id"));
+    }
+
+    @Test
+    void removeFailingAfterTheCopyIsRetriedByTheNextRun() {
+        Order order = delivered();
+        when(this.mongoTemplate.find(any(Query.class), eq(Order.class))).thenReturn(Flux.just(order));
+        when(this.mongoTemplate.remove(any(Query.class), eq(Order.class)))
+                .thenReturn(Mono.error(new IllegalStateException("primary stepped down")), Mono.just(DeleteResult.acknowledged(1)));
+
+        // the order is now in both tiers, which lists and exports read as one
+        StepVerifier.create(this.archiver.archive())
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(this.archiver.archive())
+                .expectNext(1L)
+                .verifyComplete();
+
+        verify(this.bulkOps, times(2)).replaceOne(any(Query.class), eq(order), any(FindAndReplaceOptions.class));
+        verify(this.mongoTemplate, times(2)).remove(any(Query.class), eq(Order.class));
+        verify(this.mongoTemplate, never()).remove(any(Query.class), eq(OrdersArchive.COLLECTION));
+    }
+
+    private static Order delivered() {
+        Order order = new Order();
+        order.setId(new ObjectId());
+        order.setRestaurantId("restaurant-1");
+        order.setUserId("auth0|user");
+        order.setStatus(Order.Status.DELIVERED);
+        order.setCreatedAt(LocalDateTime.now().minusDays(120));
+        return order;
+    }
+
+    private static Order idOnly(Order order) {
+        Order projected = new Order();
+        projected.setId(order.getId());
+        return projected;
+    }
+}
@@ -0,0 +1,72 @@
+package com.orders.routes.root.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orders.model.CartItem;
+import com.orders.model.DeliveryDetails;
+import com.orders.model.Order;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderExporterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OrderExporter exporter = new OrderExporter(objectMapper);
+
+    @Test
+    void csvQuotesFieldsThatNeedIt() {
+        Order order = order();
+        order.setDeliveryDetails(new DeliveryDetails("a@b.c", "Doe, \"Jane\"", "1 Main St", "Springfield"));
+
+        String csv = String.join("", exporter.csv(Flux.just(order)).collectList().block());
+
+        String[] lines = csv.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(order.getId() + ",2024-03-01T12:30:00,PAID,auth0|user,500,2500,3,2 x Pizza; 1 x Soda,"
+                + "\"Doe, \"\"Jane\"\"\",a@b.c,1 Main St,Springfield", lines[1]);
+    }
+
+    @Test
+    void csvNeutralizesCellsASpreadsheetWouldEvaluate() {
+        Order order = order();
+        order.setDeliveryDetails(new DeliveryDetails("@evil.example", "=HYPERLINK(\"http://evil.example\",\"Jane\")", "+1 Main St", "-Springfield"));
+
+        String csv = String.join("", exporter.csv(Flux.just(order)).collectList().block());
+
+        String[] lines = csv.split("\n");
+        assertEquals(order.getId() + ",2024-03-01T12:30:00,PAID,auth0|user,500,2500,3,2 x Pizza; 1 x Soda,"
+                + "\"'=HYPERLINK(\"\"http://evil.example\"\",\"\"Jane\"\")\",'@evil.example,'+1 Main St,'-Springfield", lines[1]);
+    }
+
+    @Test
+    void ndjsonWritesOneOrderPerLineInChunks() throws Exception {
+        List<String> chunks = exporter.ndjson(Flux.range(0, 600).map(i -> order())).collectList().block();
+
+        // 600 rows in chunks of 256
+        assertEquals(3, chunks.size());
+        String[] lines = String.join("", chunks).split("\n");
+        assertEquals(600, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals("PAID", first.get("status").asText());
+        assertEquals("2024-03-01T12:30:00", first.get("createdAt").asText());
+    }
+
+    private static Order order() {
+        Order order = new Order();
+        order.setId(new ObjectId());
+        order.setUserId("auth0|user");
+        order.setRestaurantId("restaurant");
+        order.setStatus(Order.Status.PAID);
+        order.setDeliveryPrice(500L);
+        order.setTotalAmount(2500L);
+        order.setCreatedAt(LocalDateTime.of(2024, 3, 1, 12, 30));
+        order.setCartItems(List.of(new CartItem("pizza", 2, "Pizza"), new CartItem("soda", 1, "Soda")));
+        return order;
+    }
+}
@@ -0,0 +1,84 @@
+package com.orders.routes.root.feed;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.orders.model.CartItem;
+import com.orders.model.Order;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// change streams need a replica set, e.g. a local `mongod --replSet rs0` after rs.initiate(),
+// run with MONGODB_REPLICA_SET_URI=mongodb://localhost:27017/?replicaSet=rs0
+@EnabledIfEnvironmentVariable(named = "MONGODB_REPLICA_SET_URI", matches = ".+")
+class RestaurantOrdersFeedTest {
+
+    private MongoClient client;
+    private ReactiveMongoTemplate mongoTemplate;
+    private RestaurantOrdersFeed feed;
+
+    @BeforeEach
+    void setUp() {
+        client = MongoClients.create(System.getenv("MONGODB_REPLICA_SET_URI"));
+        mongoTemplate = new ReactiveMongoTemplate(client, "orders-feed-test");
+        feed = new RestaurantOrdersFeed(mongoTemplate, Duration.ofMinutes(1), 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        feed.stop();
+        mongoTemplate.getMongoDatabase().flatMap(database -> Mono.from(database.drop())).block();
+        client.close();
+    }
+
+    @Test
+    void pushesInsertsAndStatusChangesToTheOwningRestaurantOnly() {
+        Order order = order("restaurant");
+        Mono<Void> writes = Mono.delay(Duration.ofSeconds(1))
+                .then(mongoTemplate.insert(order("another-restaurant")))
+                .then(mongoTemplate.insert(order))
+                .then(mongoTemplate.updateFirst(
+                        Query.query(Criteria.where("_id").is(order.getId())),
+                        new Update().set("Status", Order.Status.PAID),
+                        Order.class))
+                .then();
+
+        StepVerifier.create(feed.subscribe("restaurant").take(2).doOnSubscribe(s -> writes.subscribe()))
+                .assertNext(event -> {
+                    assertEquals("order-created", event.event());
+                    // nothing is replayed on reconnect, so no Last-Event-ID for the client to send back
+                    assertNull(event.id());
+                    assertEquals(order.getId().toString(), event.data().getId());
+                })
+                .assertNext(event -> {
+                    assertEquals("order-updated", event.event());
+                    assertEquals(Order.Status.PAID, event.data().getStatus());
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(30));
+    }
+
+    private static Order order(String restaurantId) {
+        Order order = new Order();
+        order.setId(new ObjectId());
+        order.setRestaurantId(restaurantId);
+        order.setUserId("auth0|user");
+        order.setCartItems(List.of(new CartItem("item", 1, "Item")));
+        order.setStatus(Order.Status.PLACED);
+        return order;
+    }
+}
@@ -0,0 +1,121 @@
+package com.orders.routes.root.handlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.orders.cache.OwnerRestaurantCache;
+import com.orders.client.RestaurantServiceClient;
+import com.orders.model.CartItem;
+import com.orders.model.Order;
+import com.orders.routes.root.archive.OrdersArchive;
+import com.orders.routes.root.dto.OrderPATCHReq;
+import com.orders.routes.root.export.OrderExporter;
+import com.orders.routes.root.feed.RestaurantOrdersFeed;
+import com.orders.routes.root.repository.OrderStatsRepository;
+import com.orders.routes.root.repository.OrdersRepository;
+import com.orders.routes.root.repository.OrdersRepositoryCustomImpl;
+import com.orders.stats.OrderStatsRecorder;
+import com.orders.versions.OrderVersions;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// the conditional findAndModify against a real mongod, e.g. a local `mongod`,
+// run with MONGODB_TEST_URI=mongodb://localhost:27017
+@EnabledIfEnvironmentVariable(named = "MONGODB_TEST_URI", matches = ".+")
+class ConcurrentStatusUpdatesTest {
+
+    private static final int REQUESTS = 64;
+
+    private MongoClient client;
+    private ReactiveMongoTemplate mongoTemplate;
+    private OrdersRoutesHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        client = MongoClients.create(System.getenv("MONGODB_TEST_URI"));
+        mongoTemplate = new ReactiveMongoTemplate(client, "orders-status-test");
+        OrderStatsRecorder orderStatsRecorder = mock(OrderStatsRecorder.class);
+        when(orderStatsRecorder.moved(any(Order.class), any(Order.Status.class), any())).thenReturn(Mono.empty());
+        OrderVersions orderVersions = mock(OrderVersions.class);
+        when(orderVersions.changed(any(Order.class))).thenReturn(Mono.empty());
+        when(orderVersions.changed(anyCollection())).thenReturn(Mono.empty());
+        OrdersRepository ordersRepository = new ReactiveMongoRepositoryFactory(mongoTemplate).getRepository(OrdersRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new OrdersRepositoryCustomImpl(mongoTemplate, orderStatsRecorder, orderVersions)));
+        ReactiveJwtDecoder jwtDecoder = mock(ReactiveJwtDecoder.class);
+        when(jwtDecoder.decode(anyString())).thenReturn(Mono.just(Jwt.withTokenValue("token").header("alg", "none").subject("auth0|owner").build()));
+        OwnerRestaurantCache ownerRestaurantCache = new OwnerRestaurantCache(Duration.ofMinutes(5), 100);
+        ownerRestaurantCache.get("auth0|owner", () -> Mono.just("restaurant")).block();
+        handler = new OrdersRoutesHandler(ordersRepository, ownerRestaurantCache, mock(RestaurantOrdersFeed.class), new OrderExporter(new ObjectMapper()),
+                mock(RestaurantServiceClient.class), mock(OrderStatsRepository.class), 366, new OrdersArchive(Duration.ofDays(90)),
+                orderVersions, jwtDecoder);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoTemplate.getMongoDatabase().flatMap(database -> Mono.from(database.drop())).block();
+        client.close();
+    }
+
+    @Test
+    void exactlyOneOfManyConcurrentPatchesAppliesEachTransition() {
+        Order order = new Order();
+        order.setId(new ObjectId());
+        order.setRestaurantId("restaurant");
+        order.setUserId("auth0|customer");
+        order.setCartItems(List.of(new CartItem("item", 1, "Item")));
+        order.setStatus(Order.Status.PAID);
+        mongoTemplate.insert(order).block();
+
+        for (Order.Status target : List.of(Order.Status.IN_PROGRESS, Order.Status.OUT_FOR_DELIVERY, Order.Status.DELIVERED)) {
+            Map<HttpStatusCode, Long> results = Flux.range(0, REQUESTS)
+                    .parallel(8)
+                    .runOn(Schedulers.parallel())
+                    .flatMap(i -> handler.patchOrderStatus(patchRequest(order.getId().toString(), target))
+                            .map(ServerResponse::statusCode)
+                            .onErrorResume(ResponseStatusException.class, e -> Mono.just(e.getStatusCode())))
+                    .sequential()
+                    .collect(Collectors.groupingBy(code -> code, Collectors.counting()))
+                    .block();
+
+            assertEquals(Map.of(HttpStatus.NO_CONTENT, 1L, HttpStatus.CONFLICT, (long) REQUESTS - 1), results, "moving to " + target);
+            assertEquals(target, mongoTemplate.findById(order.getId(), Order.class).block().getStatus());
+        }
+    }
+
+    private static MockServerRequest patchRequest(String id, Order.Status status) {
+        OrderPATCHReq body = new OrderPATCHReq();
+        body.setStatus(status);
+        return MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .pathVariable("id", id)
+                .body(Mono.just(body));
+    }
+}
@@ -0,0 +1,536 @@
+package com.orders.routes.root.handlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orders.cache.OwnerRestaurantCache;
+import com.orders.client.RestaurantServiceClient;
+import com.orders.model.CartItem;
+import com.orders.model.Order;
+import com.orders.model.OrderStats;
+import com.orders.model.OrderVersion;
+import com.orders.routes.root.archive.OrdersArchive;
+import com.orders.routes.root.dto.OrderDto;
+import com.orders.routes.root.dto.OrderPATCHReq;
+import com.orders.routes.root.dto.OrderSummary;
+import com.orders.routes.root.dto.OrdersGETReq;
+import com.orders.routes.root.dto.OrdersStatusPATCHReq;
+import com.orders.routes.root.dto.OrdersStatusPATCHRes;
+import com.orders.routes.root.dto.PageCursor;
+import com.orders.routes.root.dto.RestaurantStatsRes;
+import com.orders.routes.root.export.OrderExporter;
+import com.orders.routes.root.feed.RestaurantOrdersFeed;
+import com.orders.routes.root.repository.OrderStatsRepository;
+import com.orders.routes.root.repository.OrdersRepository;
+import com.orders.versions.OrderVersions;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.reactive.function.server.EntityResponse;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrdersRoutesHandlerTest {
+
+    private OrdersRepository ordersRepository;
+    private OrderStatsRepository orderStatsRepository;
+    private OwnerRestaurantCache ownerRestaurantCache;
+    private OrderVersions orderVersions;
+    private OrdersRoutesHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        ordersRepository = mock(OrdersRepository.class);
+        orderStatsRepository = mock(OrderStatsRepository.class);
+        ReactiveJwtDecoder jwtDecoder = mock(ReactiveJwtDecoder.class);
+        Jwt jwt = Jwt.withTokenValue("token").header("alg", "none").subject("auth0|user").build();
+        when(jwtDecoder.decode(anyString())).thenReturn(Mono.just(jwt));
+        ownerRestaurantCache = new OwnerRestaurantCache(Duration.ofMinutes(5), 100);
+        orderVersions = mock(OrderVersions.class);
+        // nothing archived unless a test says otherwise
+        when(orderVersions.current(anyString(), anyString())).thenReturn(Mono.just(version(false)));
+        handler = new OrdersRoutesHandler(ordersRepository, ownerRestaurantCache, mock(RestaurantOrdersFeed.class), new OrderExporter(new ObjectMapper()), mock(RestaurantServiceClient.class), orderStatsRepository, 366, new OrdersArchive(Duration.ofDays(90)), orderVersions, jwtDecoder);
+        when(ordersRepository.findArchivedOrders(anyString(), anyString(), any(), anyInt(), anyInt())).thenReturn(Flux.empty());
+        when(ordersRepository.findArchivedSummaries(anyString(), anyString(), any(), anyInt(), anyInt())).thenReturn(Flux.empty());
+        when(ordersRepository.countArchived(anyString(), anyString())).thenReturn(Mono.just(0L));
+    }
+
+    @Test
+    void userOrdersCountIsServerSide() {
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), any(Pageable.class)))
+                .thenReturn(Flux.just(order(), order(), order(), order(), order()));
+        when(ordersRepository.countByUserId("auth0|user")).thenReturn(Mono.just(42L));
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("page", "2")
+                .build();
+
+        StepVerifier.create(handler.getUserOrders(req))
+                .expectNextMatches(res -> res.statusCode() == HttpStatus.OK)
+                .verifyComplete();
+
+        verify(ordersRepository).countByUserId("auth0|user");
+        // the only find is the page itself; no unpaged query is issued to compute the total
+        verify(ordersRepository).findAllByUserId(eq("auth0|user"), argThat(Pageable::isPaged));
+        verify(ordersRepository, never()).findAllByUserId(anyString(), argThat(Pageable::isUnpaged));
+    }
+
+    @Test
+    void unchangedVersionIsNotModifiedWithoutQueryingThePage() {
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), any(Pageable.class))).thenReturn(Flux.just(order()));
+        when(ordersRepository.countByUserId("auth0|user")).thenReturn(Mono.just(1L));
+        String eTag = handler.getUserOrders(offsetRequest(2, 5)).block().headers().getETag();
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .header("If-None-Match", "W/\"0-0-stale\", " + eTag.substring(2))
+                .queryParam("page", "2")
+                .queryParam("size", "5")
+                .build();
+
+        StepVerifier.create(handler.getUserOrders(req))
+                .assertNext(res -> {
+                    assertEquals(HttpStatus.NOT_MODIFIED, res.statusCode());
+                    assertEquals(eTag, res.headers().getETag());
+                })
+                .verifyComplete();
+
+        verify(orderVersions, times(2)).current("userId", "auth0|user");
+        verify(ordersRepository, times(1)).findAllByUserId(anyString(), any(Pageable.class));
+        verify(ordersRepository, times(1)).countByUserId(anyString());
+    }
+
+    @Test
+    void eachPageAndViewOfAVersionHasItsOwnETag() {
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), any(Pageable.class))).thenReturn(Flux.just(order()));
+        when(ordersRepository.findSummariesByUserId(eq("auth0|user"), any(Pageable.class))).thenReturn(Flux.empty());
+        when(ordersRepository.countByUserId("auth0|user")).thenReturn(Mono.just(1L));
+        MockServerRequest summaries = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("page", "1")
+                .queryParam("size", "5")
+                .queryParam("view", "summary")
+                .build();
+
+        List<String> eTags = Flux.just(offsetRequest(1, 5), offsetRequest(2, 5), offsetRequest(1, 10), pageSizeRequest("5", true), summaries)
+                .concatMap(req -> handler.getUserOrders(req))
+                .map(res -> res.headers().getETag())
+                .collectList()
+                .block();
+
+        assertEquals(5, Set.copyOf(eTags).size());
+        // the same page asked for again keeps its tag
+        assertEquals(eTags.get(0), handler.getUserOrders(offsetRequest(1, 5)).block().headers().getETag());
+        assertTrue(eTags.stream().allMatch(eTag -> eTag.startsWith("W/\"epoch-7-")));
+    }
+
+    @Test
+    void changedVersionServesThePageWithItsETag() {
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), any(Pageable.class))).thenReturn(Flux.just(order()));
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .header("If-None-Match", "W/\"epoch-6\"")
+                .queryParam("after", "")
+                .build();
+
+        StepVerifier.create(handler.getUserOrders(req))
+                .assertNext(res -> {
+                    assertEquals(HttpStatus.OK, res.statusCode());
+                    assertTrue(res.headers().getETag().startsWith("W/\"epoch-7-"));
+                    assertEquals("no-cache, private", res.headers().getCacheControl());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cursorModeSkipsCountAndReturnsNextCursor() {
+        Order first = order();
+        Order second = order();
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), argThat(p -> p.getPageSize() == 2)))
+                .thenReturn(Flux.just(first, second));
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("after", "")
+                .queryParam("size", "1")
+                .build();
+
+        StepVerifier.create(handler.getUserOrders(req))
+                .assertNext(res -> {
+                    OrdersGETReq body = ((EntityResponse<OrdersGETReq>) res).entity();
+                    assertEquals(1, body.getRows().size());
+                    assertFalse(body.getPagination().getPageLimitReached());
+                    PageCursor next = PageCursor.decode(body.getPagination().getNext());
+                    assertEquals(first.getId(), next.getId());
+                    assertEquals(first.getCreatedAt(), next.getCreatedAt());
+                })
+                .verifyComplete();
+
+        verify(ordersRepository, never()).countByUserId(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cursorPageContinuesIntoTheArchive() {
+        when(orderVersions.current("userId", "auth0|user")).thenReturn(Mono.just(version(true)));
+        Order hot = order();
+        hot.setCreatedAt(LocalDateTime.now().minusDays(100));
+        Order newerArchived = order();
+        newerArchived.setCreatedAt(LocalDateTime.now().minusDays(95));
+        Order olderArchived = order();
+        olderArchived.setCreatedAt(LocalDateTime.now().minusDays(200));
+        Order oldestArchived = order();
+        oldestArchived.setCreatedAt(LocalDateTime.now().minusDays(300));
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), any(Pageable.class))).thenReturn(Flux.just(hot));
+        when(ordersRepository.findArchivedOrders("userId", "auth0|user", null, 0, 4))
+                .thenReturn(Flux.just(newerArchived, olderArchived, oldestArchived));
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("after", "")
+                .queryParam("size", "3")
+                .build();
+
+        StepVerifier.create(handler.getUserOrders(req))
+                .assertNext(res -> {
+                    OrdersGETReq<OrderDto> body = ((EntityResponse<OrdersGETReq<OrderDto>>) res).entity();
+                    // both tiers in one createdAt DESC sequence
+                    assertEquals(List.of(newerArchived.getId().toHexString(), hot.getId().toHexString(), olderArchived.getId().toHexString()),
+                            body.getRows().stream().map(OrderDto::getId).toList());
+                    assertEquals(olderArchived.getId(), PageCursor.decode(body.getPagination().getNext()).getId());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void offsetPagesContinueIntoTheArchiveWithoutRereadingTheHotTier() {
+        when(orderVersions.current("userId", "auth0|user")).thenReturn(Mono.just(version(true)));
+        // hot: hot1, hot2, hot3; then archived: archived1 .. archived4
+        Order hot3 = order();
+        Order archived1 = order();
+        Order archived2 = order();
+        Order archived3 = order();
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), any(Pageable.class))).thenAnswer(invocation -> {
+            Pageable pageable = invocation.getArgument(1);
+            return pageable.getOffset() == 2 ? Flux.just(hot3) : Flux.empty();
+        });
+        when(ordersRepository.countByUserId("auth0|user")).thenReturn(Mono.just(3L));
+        when(ordersRepository.countArchived("userId", "auth0|user")).thenReturn(Mono.just(4L));
+        when(ordersRepository.findArchivedOrders("userId", "auth0|user", null, 0, 1)).thenReturn(Flux.just(archived1));
+        when(ordersRepository.findArchivedOrders("userId", "auth0|user", null, 1, 2)).thenReturn(Flux.just(archived2, archived3));
+
+        // the page where the hot tier runs out is topped up from the start of the archive
+        StepVerifier.create(handler.getUserOrders(offsetRequest(2, 2)))
+                .assertNext(res -> {
+                    OrdersGETReq<OrderDto> body = ((EntityResponse<OrdersGETReq<OrderDto>>) res).entity();
+                    assertEquals(List.of(hot3.getId().toHexString(), archived1.getId().toHexString()),
+                            body.getRows().stream().map(OrderDto::getId).toList());
+                    assertEquals(7L, body.getPagination().getCount());
+                })
+                .verifyComplete();
+        // past it, the archive is read from skip - hotCount
+        StepVerifier.create(handler.getUserOrders(offsetRequest(3, 2)))
+                .assertNext(res -> {
+                    OrdersGETReq<OrderDto> body = ((EntityResponse<OrdersGETReq<OrderDto>>) res).entity();
+                    assertEquals(List.of(archived2.getId().toHexString(), archived3.getId().toHexString()),
+                            body.getRows().stream().map(OrderDto::getId).toList());
+                })
+                .verifyComplete();
+
+        // one hot page per request, never the rows before it
+        verify(ordersRepository, times(2)).findAllByUserId(eq("auth0|user"), any(Pageable.class));
+    }
+
+    @Test
+    void ownerWithNothingArchivedNeverReadsTheArchive() {
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), any(Pageable.class))).thenReturn(Flux.just(order()));
+        when(ordersRepository.countByUserId("auth0|user")).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(handler.getUserOrders(offsetRequest(1, 5)))
+                .expectNextMatches(res -> res.statusCode() == HttpStatus.OK)
+                .verifyComplete();
+        StepVerifier.create(handler.getUserOrders(pageSizeRequest("5", true)))
+                .expectNextMatches(res -> res.statusCode() == HttpStatus.OK)
+                .verifyComplete();
+
+        verify(ordersRepository, never()).findArchivedOrders(anyString(), anyString(), any(), anyInt(), anyInt());
+        verify(ordersRepository, never()).countArchived(anyString(), anyString());
+    }
+
+    @Test
+    void invalidPageIsBadRequest() {
+        for (String page : List.of("0", "-1", "two", "2147483647")) {
+            MockServerRequest req = MockServerRequest.builder()
+                    .header("Authorization", "Bearer token")
+                    .queryParam("page", page)
+                    .build();
+
+            StepVerifier.create(handler.getUserOrders(req))
+                    .expectErrorMatches(e -> e instanceof ResponseStatusException ex && ex.getStatusCode() == HttpStatus.BAD_REQUEST)
+                    .verify();
+        }
+        verify(ordersRepository, never()).findAllByUserId(anyString(), any(Pageable.class));
+    }
+
+    @Test
+    void pageSizeOutsideTheBoundsIsBadRequest() {
+        for (String size : List.of("0", "-3", "ten", "99999999999")) {
+            for (boolean cursor : List.of(true, false)) {
+                StepVerifier.create(handler.getUserOrders(pageSizeRequest(size, cursor)))
+                        .expectErrorMatches(e -> e instanceof ResponseStatusException ex && ex.getStatusCode() == HttpStatus.BAD_REQUEST)
+                        .verify();
+            }
+        }
+        StepVerifier.create(handler.getUserOrders(pageSizeRequest("101", true)))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException ex && ex.getStatusCode() == HttpStatus.BAD_REQUEST)
+                .verify();
+        verify(ordersRepository, never()).findAllByUserId(anyString(), any(Pageable.class));
+    }
+
+    @Test
+    void offsetPagesKeepAcceptingLargeSizes() {
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), argThat(p -> p != null && p.getPageSize() == 500))).thenReturn(Flux.just(order()));
+        when(ordersRepository.countByUserId("auth0|user")).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(handler.getUserOrders(pageSizeRequest("500", false)))
+                .expectNextMatches(res -> res.statusCode() == HttpStatus.OK)
+                .verifyComplete();
+    }
+
+    @Test
+    void fullHotPageDoesNotReadTheArchive() {
+        when(ordersRepository.findAllByUserId(eq("auth0|user"), any(Pageable.class)))
+                .thenReturn(Flux.just(order(), order()));
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("after", "")
+                .queryParam("size", "1")
+                .build();
+
+        StepVerifier.create(handler.getUserOrders(req))
+                .expectNextMatches(res -> res.statusCode() == HttpStatus.OK)
+                .verifyComplete();
+
+        verify(ordersRepository, never()).findArchivedOrders(anyString(), anyString(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void summaryViewUsesTheProjection() {
+        when(ordersRepository.findSummariesByUserId(eq("auth0|user"), any(Pageable.class)))
+                .thenReturn(Flux.just(new OrderSummary(new ObjectId().toString(), Order.Status.PAID, null, 2500L, 2)));
+        when(ordersRepository.countByUserId("auth0|user")).thenReturn(Mono.just(1L));
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("view", "summary")
+                .build();
+
+        StepVerifier.create(handler.getUserOrders(req))
+                .expectNextMatches(res -> res.statusCode() == HttpStatus.OK)
+                .verifyComplete();
+
+        verify(ordersRepository, never()).findAllByUserId(anyString(), any(Pageable.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void exportEmitsAnOrderCaughtInBothTiersOnce() {
+        Order older = order();
+        older.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, 0));
+        Order moving = order();
+        moving.setCreatedAt(LocalDateTime.of(2024, 1, 2, 12, 0));
+        Order newer = order();
+        newer.setCreatedAt(LocalDateTime.of(2024, 1, 3, 12, 0));
+        // copied to the archive, not yet removed from orders
+        when(ordersRepository.streamAllByRestaurantId(eq("restaurant"), any(), any())).thenReturn(Flux.just(moving, newer));
+        when(ordersRepository.streamArchivedByRestaurantId(eq("restaurant"), any(), any())).thenReturn(Flux.just(older, moving));
+        ownerRestaurantCache.get("auth0|user", () -> Mono.just("restaurant")).block();
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("format", "ndjson")
+                .build();
+
+        StepVerifier.create(handler.exportRestaurantOrders(req)
+                        .flatMapMany(res -> ((EntityResponse<Flux<String>>) res).entity())
+                        .collect(Collectors.joining()))
+                .assertNext(ndjson -> {
+                    String[] lines = ndjson.split("\n");
+                    assertEquals(3, lines.length);
+                    assertTrue(lines[1].contains(moving.getId().toHexString()));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void statusUpdateRefusedByTheConditionalWriteIsAConflict() {
+        Order stored = order();
+        stored.setRestaurantId("restaurant");
+        stored.setStatus(Order.Status.DELIVERED);
+        // the order is no longer in a state the target can follow, so the findAndModify matched nothing
+        when(ordersRepository.transitionStatus(stored.getId().toString(), "restaurant", Order.Status.IN_PROGRESS)).thenReturn(Mono.empty());
+        when(ordersRepository.findById(stored.getId().toString())).thenReturn(Mono.just(stored));
+        ownerRestaurantCache.get("auth0|user", () -> Mono.just("restaurant")).block();
+
+        StepVerifier.create(handler.patchOrderStatus(patchRequest(stored.getId().toString(), Order.Status.IN_PROGRESS)))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException ex && ex.getStatusCode() == HttpStatus.CONFLICT)
+                .verify();
+        verify(ordersRepository, never()).save(any(Order.class));
+    }
+
+    @Test
+    void statusUpdateOnAnotherRestaurantsOrderIsForbidden() {
+        Order stored = order();
+        stored.setRestaurantId("another-restaurant");
+        when(ordersRepository.transitionStatus(anyString(), anyString(), any(Order.Status.class))).thenReturn(Mono.empty());
+        when(ordersRepository.findById(stored.getId().toString())).thenReturn(Mono.just(stored));
+        ownerRestaurantCache.get("auth0|user", () -> Mono.just("restaurant")).block();
+
+        StepVerifier.create(handler.patchOrderStatus(patchRequest(stored.getId().toString(), Order.Status.IN_PROGRESS)))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException ex && ex.getStatusCode() == HttpStatus.FORBIDDEN)
+                .verify();
+    }
+
+    @Test
+    void bulkStatusUpdateReportsEveryOrderAndWritesOnce() {
+        Order movable = order();
+        movable.setRestaurantId("restaurant");
+        movable.setStatus(Order.Status.PAID);
+        Order delivered = order();
+        delivered.setRestaurantId("restaurant");
+        delivered.setStatus(Order.Status.DELIVERED);
+        Order foreign = order();
+        foreign.setRestaurantId("another-restaurant");
+        foreign.setStatus(Order.Status.PAID);
+        String missing = new ObjectId().toString();
+        when(ordersRepository.findStatusesByIdIn(any())).thenReturn(Flux.just(movable, delivered, foreign));
+        when(ordersRepository.transitionStatuses(eq("restaurant"), any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(1)));
+        ownerRestaurantCache.get("auth0|user", () -> Mono.just("restaurant")).block();
+        OrdersStatusPATCHReq body = new OrdersStatusPATCHReq(List.of(
+                new OrdersStatusPATCHReq.Change(movable.getId().toString(), Order.Status.IN_PROGRESS),
+                new OrdersStatusPATCHReq.Change(delivered.getId().toString(), Order.Status.IN_PROGRESS),
+                new OrdersStatusPATCHReq.Change(foreign.getId().toString(), Order.Status.IN_PROGRESS),
+                new OrdersStatusPATCHReq.Change(missing, Order.Status.IN_PROGRESS),
+                new OrdersStatusPATCHReq.Change("not-an-id", Order.Status.IN_PROGRESS),
+                new OrdersStatusPATCHReq.Change(movable.getId().toString(), Order.Status.OUT_FOR_DELIVERY)));
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .body(Mono.just(body));
+
+        StepVerifier.create(handler.patchOrderStatuses(req))
+                .assertNext(res -> {
+                    OrdersStatusPATCHRes entity = ((EntityResponse<OrdersStatusPATCHRes>) res).entity();
+                    assertEquals(List.of(OrdersStatusPATCHRes.Outcome.UPDATED, OrdersStatusPATCHRes.Outcome.CONFLICT,
+                                    OrdersStatusPATCHRes.Outcome.FORBIDDEN, OrdersStatusPATCHRes.Outcome.NOT_FOUND,
+                                    OrdersStatusPATCHRes.Outcome.INVALID, OrdersStatusPATCHRes.Outcome.INVALID),
+                            entity.getResults().stream().map(OrdersStatusPATCHRes.Result::getOutcome).toList());
+                })
+                .verifyComplete();
+
+        verify(ordersRepository).transitionStatuses(eq("restaurant"), argThat(transitions -> transitions.size() == 1));
+        verify(ordersRepository, never()).transitionStatus(anyString(), anyString(), any(Order.Status.class));
+    }
+
+    @Test
+    void restaurantStatsAreSummedFromRollups() {
+        when(orderStatsRepository.findAllByRestaurantIdAndDays("restaurant", "2024-01-01", "2024-01-31")).thenReturn(Flux.just(
+                new OrderStats(null, "restaurant", "2024-01-02", Order.Status.PLACED, 3L, 9L, 0L, null),
+                new OrderStats(null, "restaurant", "2024-01-02", Order.Status.DELIVERED, 2L, 5L, 4000L, null),
+                new OrderStats(null, "restaurant", "2024-01-05", Order.Status.PAID, 2L, 3L, 2000L, null)));
+        ownerRestaurantCache.get("auth0|user", () -> Mono.just("restaurant")).block();
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("from", "2024-01-01")
+                .queryParam("to", "2024-01-31")
+                .build();
+
+        StepVerifier.create(handler.getRestaurantStats(req))
+                .assertNext(res -> {
+                    RestaurantStatsRes stats = ((EntityResponse<RestaurantStatsRes>) res).entity();
+                    assertEquals(2, stats.getDays().size());
+                    assertEquals(3L, stats.getTotals().getOrdersByStatus().get(Order.Status.PLACED));
+                    assertEquals(4L, stats.getTotals().getPaidOrders());
+                    assertEquals(6000L, stats.getTotals().getRevenue());
+                    assertEquals(1500.0, stats.getAverageOrderValue());
+                    assertEquals(2.0, stats.getAverageBasketSize());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void restaurantStatsRangeIsBounded() {
+        MockServerRequest req = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("from", "2020-01-01")
+                .queryParam("to", "2024-01-31")
+                .build();
+
+        StepVerifier.create(handler.getRestaurantStats(req))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException ex && ex.getStatusCode() == HttpStatus.BAD_REQUEST)
+                .verify();
+        verify(orderStatsRepository, never()).findAllByRestaurantIdAndDays(anyString(), anyString(), anyString());
+    }
+
+    private static MockServerRequest patchRequest(String id, Order.Status status) {
+        OrderPATCHReq body = new OrderPATCHReq();
+        body.setStatus(status);
+        return MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .pathVariable("id", id)
+                .body(Mono.just(body));
+    }
+
+    private static MockServerRequest pageSizeRequest(String size, boolean cursor) {
+        MockServerRequest.Builder builder = MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("size", size);
+        if (cursor) {
+            builder.queryParam("after", "");
+        }
+        return builder.build();
+    }
+
+    private static MockServerRequest offsetRequest(int page, int size) {
+        return MockServerRequest.builder()
+                .header("Authorization", "Bearer token")
+                .queryParam("page", String.valueOf(page))
+                .queryParam("size", String.valueOf(size))
+                .build();
+    }
+
+    private static OrderVersion version(boolean archived) {
+        return new OrderVersion("userId:auth0|user", "epoch", 7L, archived);
+    }
+
+    private static Order order() {
+        Order order = new Order();
+        order.setId(new ObjectId());
+        order.setUserId("auth0|user");
+        order.setCartItems(List.of(new CartItem("item", 1, "Item")));
+        order.setStatus(Order.Status.PLACED);
+        return order;
+    }
+}
@@ -0,0 +1,162 @@
+package com.orders.routes.root.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.orders.model.Order;
+import com.orders.stats.OrderStatsRecorder;
+import com.orders.versions.OrderVersions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrdersRepositoryCustomImplTest {
+
+    private ReactiveMongoTemplate mongoTemplate;
+    private ReactiveBulkOperations bulkOps;
+    private OrderStatsRecorder orderStatsRecorder;
+    private OrderVersions orderVersions;
+    private OrdersRepositoryCustomImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        this.mongoTemplate = mock(ReactiveMongoTemplate.class);
+        this.bulkOps = mock(ReactiveBulkOperations.class);
+        this.orderStatsRecorder = mock(OrderStatsRecorder.class);
+        this.orderVersions = mock(OrderVersions.class);
+        when(this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class)).thenReturn(this.bulkOps);
+        when(this.bulkOps.updateOne(any(Query.class), any(UpdateDefinition.class))).thenReturn(this.bulkOps);
+        when(this.orderStatsRecorder.moved(anyCollection())).thenReturn(Mono.empty());
+        when(this.orderStatsRecorder.moved(any(Order.class), any(Order.Status.class), any())).thenReturn(Mono.empty());
+        when(this.orderVersions.changed(anyCollection())).thenReturn(Mono.empty());
+        when(this.orderVersions.changed(any(Order.class))).thenReturn(Mono.empty());
+        this.repository = new OrdersRepositoryCustomImpl(this.mongoTemplate, this.orderStatsRecorder, this.orderVersions);
+    }
+
+    @Test
+    void transitionStatusOnlyMatchesTheAllowedPreviousStates() {
+        Order previous = order(Order.Status.PAID);
+        when(this.mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(Order.class)))
+                .thenReturn(Mono.just(previous));
+
+        StepVerifier.create(this.repository.transitionStatus(previous.getId().toString(), "restaurant-1", Order.Status.OUT_FOR_DELIVERY))
+                .expectNext(previous)
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(this.mongoTemplate).findAndModify(query.capture(), update.capture(), options.capture(), eq(Order.class));
+        // one document, owned by the caller's restaurant, and only while it is in a state the target may follow
+        Document criteria = query.getValue().getQueryObject();
+        assertEquals(previous.getId(), criteria.get("_id"));
+        assertEquals("restaurant-1", criteria.get("restaurantId"));
+        assertEquals(Set.of(Order.Status.PAID, Order.Status.IN_PROGRESS),
+                new HashSet<>((Collection<?>) criteria.get("Status", Document.class).get("$in")));
+        // sets the status and tags the move, so a concurrent write to any other field is never overwritten
+        Document written = update.getValue().getUpdateObject();
+        assertEquals(new Document("Status", Order.Status.OUT_FOR_DELIVERY), written.get("$set"));
+        assertEquals(Set.of("$set", "$push"), written.keySet());
+        assertTrue(written.get("$push", Document.class).containsKey("statusChangeIds"));
+        // the stats move from the state the order was actually in, hence the document before the write
+        assertFalse(options.getValue().isReturnNew());
+        verify(this.orderStatsRecorder).moved(previous, Order.Status.OUT_FOR_DELIVERY, previous.getTotalAmount());
+        verify(this.orderVersions).changed(previous);
+    }
+
+    @Test
+    void transitionStatusThatMatchesNothingRecordsNothing() {
+        when(this.mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(Order.class)))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(this.repository.transitionStatus(new ObjectId().toString(), "restaurant-1", Order.Status.DELIVERED))
+                .verifyComplete();
+
+        verify(this.orderStatsRecorder, never()).moved(any(Order.class), any(Order.Status.class), any());
+        verify(this.orderVersions, never()).changed(any(Order.class));
+    }
+
+    @Test
+    void transitionStatusWithAMalformedIdDoesNotQuery() {
+        StepVerifier.create(this.repository.transitionStatus("not-an-id", "restaurant-1", Order.Status.DELIVERED))
+                .verifyComplete();
+
+        verify(this.mongoTemplate, never()).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(Order.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void partialBulkWriteOnlyReportsTheMovesItMade() {
+        Order mine = order(Order.Status.PAID);
+        Order movedConcurrently = order(Order.Status.PAID);
+        List<StatusTransition> transitions = List.of(
+                new StatusTransition(mine, Order.Status.IN_PROGRESS),
+                new StatusTransition(movedConcurrently, Order.Status.IN_PROGRESS));
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getModifiedCount()).thenReturn(1);
+        when(this.bulkOps.execute()).thenReturn(Mono.just(result));
+        // the read back only matches the orders tagged with this write's statusChangeId
+        when(this.mongoTemplate.find(any(Query.class), eq(Order.class))).thenReturn(Flux.just(idOnly(mine)));
+
+        StepVerifier.create(this.repository.transitionStatuses("restaurant-1", transitions))
+                .assertNext(applied -> assertEquals(List.of(mine.getId()), applied.stream().map(StatusTransition::getId).toList()))
+                .verifyComplete();
+
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(this.bulkOps, times(2)).updateOne(any(Query.class), updates.capture());
+        Update.Modifiers pushed = (Update.Modifiers) updates.getValue().getUpdateObject().get("$push", Document.class).get("statusChangeIds");
+        Object statusChangeId = pushed.getModifiers().stream()
+                .filter(modifier -> modifier.getKey().equals("$each"))
+                .map(each -> ((Object[]) each.getValue())[0])
+                .findFirst()
+                .orElseThrow();
+        ArgumentCaptor<Query> readBack = ArgumentCaptor.forClass(Query.class);
+        verify(this.mongoTemplate).find(readBack.capture(), eq(Order.class));
+        assertEquals(statusChangeId, readBack.getValue().getQueryObject().get("statusChangeIds"));
+        ArgumentCaptor<Collection<StatusTransition>> recorded = ArgumentCaptor.forClass(Collection.class);
+        verify(this.orderStatsRecorder).moved(recorded.capture());
+        assertEquals(1, recorded.getValue().size());
+    }
+
+    private static Order order(Order.Status status) {
+        Order order = new Order();
+        order.setId(new ObjectId());
+        order.setRestaurantId("restaurant-1");
+        order.setUserId("auth0|user");
+        order.setStatus(status);
+        return order;
+    }
+
+    private static Order idOnly(Order order) {
+        Order projected = new Order();
+        projected.setId(order.getId());
+        return projected;
+    }
+}
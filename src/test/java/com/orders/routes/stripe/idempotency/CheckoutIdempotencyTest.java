@@ -0,0 +1,241 @@
+package com.orders.routes.stripe.idempotency;
+
+import com.orders.model.IdempotencyKey;
+import com.orders.routes.stripe.dto.CheckoutSessionRes;
+import com.orders.routes.stripe.repository.IdempotencyKeysRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CheckoutIdempotencyTest {
+
+    private static final Map<String, String> REQUEST = Map.of("restaurantSlug", "restaurant-1");
+
+    // what the idempotency_keys collection holds, shared by every instance in a test
+    private final Map<String, IdempotencyKey> keys = new ConcurrentHashMap<>();
+    private IdempotencyKeysRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        this.repository = mock(IdempotencyKeysRepository.class);
+        when(this.repository.insert(any(IdempotencyKey.class))).thenAnswer(invocation -> {
+            IdempotencyKey key = invocation.getArgument(0);
+            return Mono.defer(() -> this.keys.putIfAbsent(key.getId(), key) == null
+                    ? Mono.just(key)
+                    : Mono.error(new DuplicateKeyException(key.getId())));
+        });
+        when(this.repository.finish(anyString(), anyString(), anyString(), any(), any(Instant.class))).thenAnswer(invocation ->
+                Mono.fromSupplier(() -> {
+                    IdempotencyKey key = this.keys.get(invocation.<String>getArgument(0));
+                    if (key == null || !key.getLeaseId().equals(invocation.getArgument(1)) || key.getStatus() != IdempotencyKey.Status.IN_PROGRESS) {
+                        return 0L;
+                    }
+                    key.setStatus(IdempotencyKey.Status.valueOf(invocation.getArgument(2)));
+                    key.setSessionUrl(invocation.getArgument(3));
+                    key.setExpiresAt(invocation.getArgument(4));
+                    return 1L;
+                }));
+        when(this.repository.renew(anyString(), anyString(), any(Instant.class))).thenAnswer(invocation ->
+                Mono.fromSupplier(() -> {
+                    IdempotencyKey key = this.keys.get(invocation.<String>getArgument(0));
+                    if (key == null || !key.getLeaseId().equals(invocation.getArgument(1)) || key.getStatus() != IdempotencyKey.Status.IN_PROGRESS) {
+                        return 0L;
+                    }
+                    key.setExpiresAt(invocation.getArgument(2));
+                    return 1L;
+                }));
+        when(this.repository.deleteByIdAndLeaseId(anyString(), anyString())).thenAnswer(invocation ->
+                Mono.fromSupplier(() -> this.keys.computeIfPresent(invocation.getArgument(0),
+                        (id, key) -> key.getLeaseId().equals(invocation.getArgument(1)) ? null : key) == null ? 1L : 0L));
+        when(this.repository.findById(anyString())).thenAnswer(invocation ->
+                Mono.fromSupplier(() -> this.keys.get(invocation.<String>getArgument(0))));
+    }
+
+    @Test
+    void concurrentDuplicatesShareOneCheckout() {
+        CheckoutIdempotency idempotency = this.idempotency();
+        AtomicInteger checkouts = new AtomicInteger();
+        Supplier<Mono<CheckoutSessionRes>> checkout = () -> Mono.fromSupplier(() -> new CheckoutSessionRes("https://checkout/" + checkouts.incrementAndGet()))
+                .delayElement(Duration.ofMillis(100));
+
+        StepVerifier.create(Flux.range(0, 20).flatMap(i -> idempotency.execute("auth0|user", "key-1", REQUEST, placed(checkout))))
+                .expectNextCount(20)
+                .verifyComplete();
+
+        assertEquals(1, checkouts.get());
+        assertEquals(IdempotencyKey.Status.COMPLETED, this.keys.get("auth0|user:key-1").getStatus());
+    }
+
+    @Test
+    void completedKeyIsReplayedOnAnotherInstance() {
+        AtomicInteger checkouts = new AtomicInteger();
+        Supplier<Mono<CheckoutSessionRes>> checkout = () -> Mono.fromSupplier(() -> new CheckoutSessionRes("https://checkout/" + checkouts.incrementAndGet()));
+
+        StepVerifier.create(this.idempotency().execute("auth0|user", "key-1", REQUEST, placed(checkout)).map(CheckoutSessionRes::getUrl))
+                .expectNext("https://checkout/1")
+                .verifyComplete();
+        // a second instance has nothing in its front cache and reads the stored response
+        StepVerifier.create(this.idempotency().execute("auth0|user", "key-1", REQUEST, placed(checkout)).map(CheckoutSessionRes::getUrl))
+                .expectNext("https://checkout/1")
+                .verifyComplete();
+        // the same key from another user is a different checkout
+        StepVerifier.create(this.idempotency().execute("auth0|other", "key-1", REQUEST, placed(checkout)).map(CheckoutSessionRes::getUrl))
+                .expectNext("https://checkout/2")
+                .verifyComplete();
+
+        assertEquals(2, checkouts.get());
+    }
+
+    @Test
+    void duplicateOnAnotherInstanceWaitsForTheFirstAttempt() {
+        AtomicInteger checkouts = new AtomicInteger();
+        Supplier<Mono<CheckoutSessionRes>> checkout = () -> Mono.fromSupplier(() -> new CheckoutSessionRes("https://checkout/" + checkouts.incrementAndGet()))
+                .delayElement(Duration.ofMillis(300));
+
+        StepVerifier.create(Flux.merge(
+                        this.idempotency().execute("auth0|user", "key-1", REQUEST, placed(checkout)),
+                        Mono.delay(Duration.ofMillis(50)).then(this.idempotency().execute("auth0|user", "key-1", REQUEST, placed(checkout))))
+                        .map(CheckoutSessionRes::getUrl))
+                .expectNext("https://checkout/1", "https://checkout/1")
+                .verifyComplete();
+
+        assertEquals(1, checkouts.get());
+    }
+
+    @Test
+    void failureBeforePlacingTheOrderReleasesTheKey() {
+        CheckoutIdempotency idempotency = this.idempotency();
+        AtomicInteger checkouts = new AtomicInteger();
+        // e.g. the restaurant service is down: the first attempt fails before placing anything
+        CheckoutIdempotency.Checkout checkout = placing -> {
+            if (checkouts.incrementAndGet() == 1) {
+                return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Restaurant service unavailable"));
+            }
+            placing.run();
+            return Mono.just(new CheckoutSessionRes("https://checkout/" + checkouts.get()));
+        };
+
+        StepVerifier.create(idempotency.execute("auth0|user", "key-1", REQUEST, checkout))
+                .expectError(ResponseStatusException.class)
+                .verify();
+        assertFalse(this.keys.containsKey("auth0|user:key-1"));
+
+        StepVerifier.create(idempotency.execute("auth0|user", "key-1", REQUEST, checkout).map(CheckoutSessionRes::getUrl))
+                .expectNext("https://checkout/2")
+                .verifyComplete();
+    }
+
+    @Test
+    void sameKeyWithAnotherRequestIsRejected() {
+        AtomicInteger checkouts = new AtomicInteger();
+        Supplier<Mono<CheckoutSessionRes>> checkout = () -> Mono.fromSupplier(() -> new CheckoutSessionRes("https://checkout/" + checkouts.incrementAndGet()));
+        CheckoutIdempotency idempotency = this.idempotency();
+
+        StepVerifier.create(idempotency.execute("auth0|user", "key-1", REQUEST, placed(checkout)))
+                .expectNextCount(1)
+                .verifyComplete();
+        StepVerifier.create(idempotency.execute("auth0|user", "key-1", Map.of("restaurantSlug", "restaurant-2"), placed(checkout)))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException ex && ex.getStatusCode() == HttpStatus.UNPROCESSABLE_ENTITY)
+                .verify();
+
+        assertEquals(1, checkouts.get());
+    }
+
+    @Test
+    void failureAfterPlacingTheOrderKeepsTheKey() {
+        CheckoutIdempotency idempotency = this.idempotency();
+        AtomicInteger checkouts = new AtomicInteger();
+        CheckoutIdempotency.Checkout checkout = placing -> {
+            checkouts.incrementAndGet();
+            placing.run();
+            return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Payment provider busy"));
+        };
+
+        StepVerifier.create(idempotency.execute("auth0|user", "key-1", REQUEST, checkout))
+                .expectError(ResponseStatusException.class)
+                .verify();
+        assertEquals(IdempotencyKey.Status.FAILED, this.keys.get("auth0|user:key-1").getStatus());
+
+        // the order may exist: the retry is told to use a new key instead of placing a second one
+        StepVerifier.create(idempotency.execute("auth0|user", "key-1", REQUEST, checkout))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException ex && ex.getStatusCode() == HttpStatus.CONFLICT)
+                .verify();
+        assertEquals(1, checkouts.get());
+    }
+
+    @Test
+    void attemptThatOutlivedItsLeaseLeavesTheNewerClaimAlone() {
+        CheckoutIdempotency idempotency = this.idempotency();
+        Supplier<Mono<CheckoutSessionRes>> checkout = () -> {
+            // the lease runs out mid-attempt and another request claims the key
+            this.keys.put("auth0|user:key-1", IdempotencyKey.started("auth0|user:key-1", CheckoutIdempotency.fingerprint(REQUEST), "newer-lease", Instant.now().plusSeconds(60)));
+            return Mono.just(new CheckoutSessionRes("https://checkout/stale"));
+        };
+
+        StepVerifier.create(idempotency.execute("auth0|user", "key-1", REQUEST, placed(checkout)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        IdempotencyKey key = this.keys.get("auth0|user:key-1");
+        assertEquals("newer-lease", key.getLeaseId());
+        assertEquals(IdempotencyKey.Status.IN_PROGRESS, key.getStatus());
+        assertNull(key.getSessionUrl());
+    }
+
+    @Test
+    void leaseIsRenewedWhileTheCheckoutRuns() {
+        CheckoutIdempotency idempotency = this.idempotency(Duration.ofMillis(150));
+        AtomicInteger checkouts = new AtomicInteger();
+        // a checkout slower than the lease, e.g. Stripe retrying with backoff
+        Supplier<Mono<CheckoutSessionRes>> checkout = () -> Mono.delay(Duration.ofMillis(600))
+                .then(Mono.defer(() -> {
+                    // what Mongo's TTL monitor would find if the lease had not moved
+                    assertTrue(this.keys.get("auth0|user:key-1").getExpiresAt().isAfter(Instant.now()));
+                    return Mono.just(new CheckoutSessionRes("https://checkout/" + checkouts.incrementAndGet()));
+                }));
+
+        StepVerifier.create(idempotency.execute("auth0|user", "key-1", REQUEST, placed(checkout)).map(CheckoutSessionRes::getUrl))
+                .expectNext("https://checkout/1")
+                .verifyComplete();
+
+        assertEquals(IdempotencyKey.Status.COMPLETED, this.keys.get("auth0|user:key-1").getStatus());
+    }
+
+    // a checkout that places its order before doing anything else, like the real one
+    private static CheckoutIdempotency.Checkout placed(Supplier<Mono<CheckoutSessionRes>> checkout) {
+        return placing -> {
+            placing.run();
+            return checkout.get();
+        };
+    }
+
+    private CheckoutIdempotency idempotency() {
+        return this.idempotency(Duration.ofMinutes(2));
+    }
+
+    private CheckoutIdempotency idempotency(Duration lease) {
+        return new CheckoutIdempotency(this.repository, Duration.ofHours(24), lease,
+                Duration.ofSeconds(5), Duration.ofMillis(20), Duration.ofMinutes(10), 100);
+    }
+}
@@ -0,0 +1,65 @@
+package com.orders.routes.stripe.repository;
+
+import com.mongodb.client.result.DeleteResult;
+import com.orders.model.Order;
+import com.orders.stats.OrderStatsRecorder;
+import com.orders.versions.OrderVersions;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StripeOrdersRepositoryCustomImplTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reapOnlyRecordsTheOrdersItRemoved() {
+        ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+        OrderStatsRecorder orderStatsRecorder = mock(OrderStatsRecorder.class);
+        OrderVersions orderVersions = mock(OrderVersions.class);
+        when(orderStatsRecorder.removed(anyCollection())).thenReturn(Mono.empty());
+        when(orderVersions.changed(anyCollection())).thenReturn(Mono.empty());
+        Order reaped = placed();
+        Order discarded = placed();
+        when(mongoTemplate.find(any(Query.class), eq(Order.class))).thenReturn(Flux.just(reaped, discarded));
+        // an expired session's discardPlaced removed (and recorded) the second order between the read and the delete
+        when(mongoTemplate.remove(any(Query.class), eq(Order.class))).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            return Mono.just(DeleteResult.acknowledged(reaped.getId().equals(query.getQueryObject().get("_id")) ? 1 : 0));
+        });
+        StripeOrdersRepositoryCustomImpl repository = new StripeOrdersRepositoryCustomImpl(mongoTemplate, orderStatsRecorder, orderVersions);
+
+        StepVerifier.create(repository.reapPlaced(LocalDateTime.now(), 100))
+                .expectNext(1L)
+                .verifyComplete();
+
+        ArgumentCaptor<Collection<Order>> recorded = ArgumentCaptor.forClass(Collection.class);
+        verify(orderStatsRecorder).removed(recorded.capture());
+        assertEquals(List.of(reaped), List.copyOf(recorded.getValue()));
+    }
+
+    private static Order placed() {
+        Order order = new Order();
+        order.setId(new ObjectId());
+        order.setRestaurantId("restaurant-1");
+        order.setUserId("auth0|user");
+        order.setStatus(Order.Status.PLACED);
+        return order;
+    }
+}
@@ -0,0 +1,42 @@
+package com.orders.routes.stripe.workers;
+
+import com.orders.routes.stripe.repository.StripeOrdersRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PlacedOrdersReaperTest {
+
+    @Test
+    void runKeepsReapingUntilABatchComesBackShort() {
+        StripeOrdersRepository stripeOrdersRepository = mock(StripeOrdersRepository.class);
+        when(stripeOrdersRepository.reapPlaced(any(LocalDateTime.class), eq(100)))
+                .thenReturn(Mono.just(100L), Mono.just(100L), Mono.just(42L));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // 100 per batch at 1000 orders/s: 100ms between batches
+        PlacedOrdersReaper reaper = new PlacedOrdersReaper(stripeOrdersRepository, meterRegistry,
+                true, Duration.ofMinutes(15), Duration.ofHours(48), 100, 1000);
+
+        StepVerifier.create(reaper.reap())
+                .expectNext(242L)
+                .verifyComplete();
+
+        verify(stripeOrdersRepository, times(3)).reapPlaced(any(LocalDateTime.class), eq(100));
+        DistributionSummary reclaimed = meterRegistry.get("orders.reaper.reclaimed").summary();
+        assertEquals(1, reclaimed.count());
+        assertEquals(242.0, reclaimed.totalAmount());
+    }
+}
@@ -0,0 +1,185 @@
+package com.orders.routes.stripe.workers;
+
+import com.orders.model.Order;
+import com.orders.model.StripeEvent;
+import com.orders.routes.stripe.repository.StripeOrdersRepository;
+import com.mongodb.client.result.UpdateResult;
+import com.stripe.Stripe;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StripeEventsWorkerTest {
+
+    private ReactiveMongoTemplate mongoTemplate;
+    private StripeOrdersRepository stripeOrdersRepository;
+    private StripeEventsWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(ReactiveMongoTemplate.class);
+        stripeOrdersRepository = mock(StripeOrdersRepository.class);
+        worker = new StripeEventsWorker(
+                mongoTemplate,
+                stripeOrdersRepository,
+                Duration.ofSeconds(1), 10, 2, 3, Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofDays(30)
+        );
+    }
+
+    @Test
+    void completedCheckoutMarksOrderPaid() {
+        String orderId = new ObjectId().toString();
+        when(stripeOrdersRepository.markPaid(orderId, 1500L)).thenReturn(Mono.just(new Order()));
+
+        StepVerifier.create(worker.process(event("checkout.session.completed", orderId)))
+                .verifyComplete();
+
+        verify(stripeOrdersRepository).markPaid(orderId, 1500L);
+    }
+
+    @Test
+    void replayedCompletionIsANoOp() {
+        String orderId = new ObjectId().toString();
+        when(stripeOrdersRepository.markPaid(orderId, 1500L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(worker.process(event("checkout.session.completed", orderId)))
+                .verifyComplete();
+    }
+
+    @Test
+    void expiredCheckoutDiscardsTheUnpaidOrder() {
+        String orderId = new ObjectId().toString();
+        when(stripeOrdersRepository.discardPlaced(orderId)).thenReturn(Mono.just(new Order()));
+
+        StepVerifier.create(worker.process(event("checkout.session.expired", orderId)))
+                .verifyComplete();
+
+        verify(stripeOrdersRepository).discardPlaced(orderId);
+        verify(stripeOrdersRepository, never()).markPaid(any(String.class), any(Long.class));
+    }
+
+    @Test
+    void expiredSessionWithoutAValidOrderIdIsSkipped() {
+        StepVerifier.create(worker.process(event("checkout.session.expired", "not-an-object-id")))
+                .verifyComplete();
+        StepVerifier.create(worker.process(withoutMetadata(event("checkout.session.expired", "unused"))))
+                .verifyComplete();
+
+        verify(stripeOrdersRepository, never()).discardPlaced(any(String.class));
+    }
+
+    @Test
+    void otherEventTypesHaveNoSideEffects() {
+        StepVerifier.create(worker.process(event("checkout.session.async_payment_failed", new ObjectId().toString())))
+                .verifyComplete();
+
+        verify(stripeOrdersRepository, never()).markPaid(any(String.class), any(Long.class));
+        verify(stripeOrdersRepository, never()).discardPlaced(any(String.class));
+    }
+
+    @Test
+    void malformedPayloadFailsTheMonoInsteadOfThrowing() {
+        StripeEvent event = StripeEvent.received("evt_test", "checkout.session.completed", "{not json");
+
+        StepVerifier.create(worker.process(event))
+                .expectError(StripeEventsWorker.UnprocessableEventException.class)
+                .verify();
+    }
+
+    @Test
+    void completedSessionWithoutAValidOrderIdIsUnprocessable() {
+        StepVerifier.create(worker.process(event("checkout.session.completed", "not-an-object-id")))
+                .expectError(StripeEventsWorker.UnprocessableEventException.class)
+                .verify();
+        StepVerifier.create(worker.process(withoutMetadata(event("checkout.session.completed", "unused"))))
+                .expectError(StripeEventsWorker.UnprocessableEventException.class)
+                .verify();
+
+        verify(stripeOrdersRepository, never()).markPaid(any(String.class), any(Long.class));
+    }
+
+    @Test
+    void poisonEventIsDeadLetteredUnderItsLeaseWithoutStoppingTheBatch() {
+        String orderId = new ObjectId().toString();
+        StripeEvent poison = claimed(StripeEvent.received("evt_poison", "checkout.session.completed", "{not json"), "lease-1");
+        StripeEvent good = claimed(event("checkout.session.completed", orderId), "lease-2");
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(StripeEvent.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(StripeEvent.class)))
+                .thenReturn(Mono.just(poison), Mono.just(good), Mono.empty());
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(StripeEvent.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        when(stripeOrdersRepository.markPaid(orderId, 1500L)).thenReturn(Mono.just(new Order()));
+
+        StepVerifier.create(worker.drain())
+                .expectNext(2L)
+                .verifyComplete();
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).updateFirst(queries.capture(), updates.capture(), eq(StripeEvent.class));
+        List<String> outcomes = updates.getAllValues().stream()
+                .map(update -> String.valueOf(update.getUpdateObject().get("$set", Document.class).get("status")))
+                .sorted()
+                .toList();
+        assertEquals(List.of("FAILED", "PROCESSED"), outcomes);
+        // both outcomes are only recorded while the attempt still holds the lease it claimed
+        assertEquals(List.of("lease-1", "lease-2"), queries.getAllValues().stream()
+                .map(query -> query.getQueryObject().getString("leaseId"))
+                .sorted()
+                .toList());
+        verify(stripeOrdersRepository).markPaid(orderId, 1500L);
+    }
+
+    private static StripeEvent claimed(StripeEvent event, String leaseId) {
+        event.setStatus(StripeEvent.Status.PROCESSING);
+        event.setAttempts(1);
+        event.setLeaseId(leaseId);
+        return event;
+    }
+
+    private static StripeEvent withoutMetadata(StripeEvent event) {
+        event.setPayload(event.getPayload().replaceAll(",\\s*\"metadata\": \\{[^}]*}", ""));
+        return event;
+    }
+
+    private static StripeEvent event(String type, String orderId) {
+        String payload = """
+                {
+                  "id": "evt_test",
+                  "object": "event",
+                  "api_version": "%s",
+                  "type": "%s",
+                  "data": {
+                    "object": {
+                      "id": "cs_test",
+                      "object": "checkout.session",
+                      "amount_total": 1500,
+                      "metadata": { "orderId": "%s" }
+                    }
+                  }
+                }
+                """.formatted(Stripe.API_VERSION, type, orderId);
+        return StripeEvent.received("evt_test", type, payload);
+    }
+}
@@ -0,0 +1,87 @@
+package com.orders.stats;
+
+import com.mongodb.client.result.DeleteResult;
+import com.orders.model.JobLock;
+import com.orders.model.OrderStats;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderStatsRebuilderTest {
+
+    // what the job_locks collection holds, shared by every instance in a test
+    private final Map<String, JobLock> locks = new ConcurrentHashMap<>();
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        this.mongoTemplate = mock(ReactiveMongoTemplate.class);
+        when(this.mongoTemplate.insert(any(JobLock.class))).thenAnswer(invocation -> {
+            JobLock lock = invocation.getArgument(0);
+            return Mono.defer(() -> this.locks.putIfAbsent(lock.getId(), lock) == null
+                    ? Mono.just(lock)
+                    : Mono.error(new DuplicateKeyException(lock.getId())));
+        });
+        when(this.mongoTemplate.remove(any(Query.class), eq(JobLock.class))).thenAnswer(invocation -> {
+            Document criteria = invocation.<Query>getArgument(0).getQueryObject();
+            return Mono.fromSupplier(() -> DeleteResult.acknowledged(this.locks.computeIfPresent(criteria.getString("_id"),
+                    (id, lock) -> lock.getLeaseId().equals(criteria.getString("leaseId")) ? null : lock) == null ? 1 : 0));
+        });
+        when(this.mongoTemplate.remove(any(Query.class), eq(OrderStats.class)))
+                .thenReturn(Mono.just(DeleteResult.acknowledged(3)));
+    }
+
+    @Test
+    void onlyOneOfTheInstancesStartedWithTheFlagRebuilds() {
+        when(this.mongoTemplate.aggregate(any(Aggregation.class), eq("orders"), eq(Document.class)))
+                .thenReturn(Flux.<Document>empty().delaySubscription(Duration.ofMillis(50)));
+
+        StepVerifier.create(Flux.merge(this.rebuilder().rebuildOnce(), this.rebuilder().rebuildOnce(), this.rebuilder().rebuildOnce()))
+                .expectNext(3L)
+                .verifyComplete();
+
+        verify(this.mongoTemplate).aggregate(any(Aggregation.class), eq("orders"), eq(Document.class));
+        // kept after a successful rebuild, so instances started later in the rollout skip it too
+        assertTrue(this.locks.containsKey(OrderStatsRebuilder.LOCK));
+    }
+
+    @Test
+    void failedRebuildReleasesTheLock() {
+        when(this.mongoTemplate.aggregate(any(Aggregation.class), eq("orders"), eq(Document.class)))
+                .thenReturn(Flux.error(new IllegalStateException("primary stepped down")), Flux.empty());
+
+        StepVerifier.create(this.rebuilder().rebuildOnce())
+                .expectError(IllegalStateException.class)
+                .verify();
+        assertEquals(Map.of(), this.locks);
+
+        StepVerifier.create(this.rebuilder().rebuildOnce())
+                .expectNext(3L)
+                .verifyComplete();
+        verify(this.mongoTemplate, times(2)).aggregate(any(Aggregation.class), eq("orders"), eq(Document.class));
+    }
+
+    private OrderStatsRebuilder rebuilder() {
+        return new OrderStatsRebuilder(this.mongoTemplate, true, Duration.ofHours(1));
+    }
+}
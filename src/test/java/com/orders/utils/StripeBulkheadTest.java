@@ -0,0 +1,72 @@
+package com.orders.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripeBulkheadTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private StripeBulkhead bulkhead;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        bulkhead.destroy();
+    }
+
+    @Test
+    void callsRunOnBulkheadThreads() {
+        bulkhead = new StripeBulkhead(2, 2, StripeBulkhead.RejectionPolicy.FAIL_FAST, 0, Duration.ZERO);
+        StepVerifier.create(bulkhead.call(() -> Thread.currentThread().getName()))
+                .assertNext(name -> assertTrue(name.startsWith("stripe-")))
+                .verifyComplete();
+    }
+
+    @Test
+    void saturatedBulkheadFailsFastWith503() throws InterruptedException {
+        bulkhead = new StripeBulkhead(1, 1, StripeBulkhead.RejectionPolicy.FAIL_FAST, 0, Duration.ZERO);
+        CountDownLatch started = new CountDownLatch(1);
+        bulkhead.call(() -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }).subscribe();
+        started.await(5, TimeUnit.SECONDS);
+        bulkhead.call(() -> release.await(5, TimeUnit.SECONDS)).subscribe();
+
+        assertEquals(1, bulkhead.activeCalls());
+        assertEquals(1, bulkhead.queuedCalls());
+        StepVerifier.create(bulkhead.call(() -> "rejected"))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException ex
+                        && ex.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE)
+                .verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void retryPolicyWaitsForCapacity() throws InterruptedException {
+        bulkhead = new StripeBulkhead(1, 1, StripeBulkhead.RejectionPolicy.RETRY, 5, Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        bulkhead.call(() -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }).subscribe();
+        started.await(5, TimeUnit.SECONDS);
+        bulkhead.call(() -> "queued").subscribe();
+
+        Mono<String> call = bulkhead.call(() -> "admitted");
+        Mono.delay(Duration.ofMillis(100)).subscribe(tick -> release.countDown());
+        StepVerifier.create(call)
+                .expectNext("admitted")
+                .verifyComplete();
+    }
+}
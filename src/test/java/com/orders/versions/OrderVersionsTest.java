@@ -0,0 +1,41 @@
+package com.orders.versions;
+
+import com.orders.model.OrderVersion;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class OrderVersionsTest {
+
+    @Test
+    void readingAnOwnerWithoutACounterWritesNothing() {
+        ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+        when(mongoTemplate.findById(anyString(), eq(OrderVersion.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(new OrderVersions(mongoTemplate).current("userId", "auth0|user"))
+                .assertNext(version -> {
+                    assertEquals(0L, version.getVersion());
+                    assertFalse(version.isArchived());
+                })
+                .verifyComplete();
+
+        verify(mongoTemplate).findById("userId:auth0|user", OrderVersion.class);
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(OrderVersion.class));
+        verifyNoMoreInteractions(mongoTemplate);
+    }
+}